@@ -1,21 +1,247 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 
-/** This class represents a blob, or file.
+/** This class represents a blob, or file. A blob is stored as
+ * MAGIC followed by the raw file contents, or as DELTA_MAGIC followed
+ * by a delta against an earlier version, possibly compressed (see
+ * Codec). An uncompressed whole blob is mapped and copied into the
+ * working tree without deserializing it. Blobs
+ * stored by older versions are serialized Blob objects, and are still
+ * read.
  * @author shivang singh
  */
 public class Blob implements Serializable {
-    /** Class constructor. This will save the contents of a
-     * file passed in to blob.
+    /** Class constructor. This will hash the contents of a
+     * file passed in to blob, reading it a chunk at a time.
      * @param contents represents the contents of File.
      */
     Blob(File contents) {
         _name = contents.getName();
-        _contents = Utils.readContents(contents);
-        stringCont = Utils.readContentsAsString(contents);
-        _UID = Utils.sha1(_contents);
+        _file = contents;
+        try (InputStream in = Files.newInputStream(contents.toPath())) {
+            _UID = Utils.sha1(in, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A blob already in the object store, whose contents are read
+     * only when asked for.
+     * @param uid SHA1 of the blob.
+     */
+    Blob(String uid) {
+        _UID = uid;
+    }
+
+    /** Streams the contents of FILE into the object store, hashing
+     * them on the way, and returns the stored blob. Memory use does not
+     * depend on the size of FILE.
+     * @param file the working-tree file
+     * @return
+     */
+    static Blob store(File file) {
+        return store(file, null);
+    }
+
+    /** Stores the contents of FILE, whose previous version was the blob
+     * BASE (null if none), and returns the stored blob. A file of
+     * between DELTA_MIN and DELTA_MAX bytes is stored as a delta against
+     * BASE when that is less than half its size and would not make the
+     * chain of deltas longer than MAX_CHAIN. Anything else is streamed
+     * into the store whole.
+     * @param file the working-tree file
+     * @param base UID of the previous version
+     * @return
+     */
+    static Blob store(File file, String base) {
+        long size = file.length();
+        String uid;
+        if (base != null && size >= DELTA_MIN && size <= DELTA_MAX) {
+            uid = store(Utils.readContents(file), base)._UID;
+        } else {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                uid = Repository.BLOB_STORE.store(MAGIC, in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Blob result = new Blob(uid);
+        result._name = file.getName();
+        return result;
+    }
+
+    /** Stores CONTENTS, whose previous version was the blob BASE (null
+     * if none), and returns the stored blob: as a delta against BASE if
+     * store(File, String) would store a file of that size so, and whole
+     * otherwise.
+     * @param contents the bytes of the blob
+     * @param base UID of the previous version
+     * @return
+     */
+    static Blob store(byte[] contents, String base) {
+        String uid = Utils.sha1(contents);
+        if (!Repository.BLOB_STORE.contains(uid)) {
+            byte[] delta = null;
+            if (base != null && contents.length >= DELTA_MIN
+                    && contents.length <= DELTA_MAX) {
+                delta = deltaAgainst(base, contents);
+            }
+            Repository.BLOB_STORE.write(uid, delta != null ? delta
+                    : concat(MAGIC, contents));
+        } else {
+            Repository.BLOB_STORE.freshen(uid);
+        }
+        return new Blob(uid);
+    }
+
+    /** Returns TARGET stored as a delta against the blob BASE, or null if
+     * that is not worthwhile.
+     * @param base UID of the base blob
+     * @param target new contents
+     * @return
+     */
+    private static byte[] deltaAgainst(String base, byte[] target) {
+        int depth = depth(base);
+        if (depth < 0 || depth >= MAX_CHAIN) {
+            return null;
+        }
+        byte[] delta = Delta.create(contents(base), target);
+        if (delta.length > target.length / 2) {
+            return null;
+        }
+        byte[] header = new byte[DELTA_MAGIC.length + Utils.UID_LENGTH + 1];
+        System.arraycopy(DELTA_MAGIC, 0, header, 0, DELTA_MAGIC.length);
+        byte[] id = base.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(id, 0, header, DELTA_MAGIC.length, id.length);
+        header[header.length - 1] = (byte) (depth + 1);
+        return concat(header, delta);
+    }
+
+    /** Returns the number of deltas that must be applied to rebuild the
+     * stored blob UID, or -1 if it is missing.
+     * @param uid SHA1 of the blob
+     * @return
+     */
+    private static int depth(String uid) {
+        try (InputStream in = Repository.BLOB_STORE.open(uid)) {
+            if (in == null) {
+                return -1;
+            }
+            byte[] head = in.readNBytes(DELTA_MAGIC.length);
+            if (!Arrays.equals(head, DELTA_MAGIC)) {
+                return 0;
+            }
+            in.skipNBytes(Utils.UID_LENGTH);
+            return in.read();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the UID of the blob that the stored blob UID is a delta
+     * against, or null if it is stored whole.
+     * @param uid SHA1 of the blob
+     * @return
+     */
+    static String deltaBase(String uid) {
+        try (InputStream in = Repository.BLOB_STORE.open(uid)) {
+            if (in == null
+                    || !Arrays.equals(in.readNBytes(DELTA_MAGIC.length),
+                                      DELTA_MAGIC)) {
+                return null;
+            }
+            return new String(in.readNBytes(Utils.UID_LENGTH),
+                              StandardCharsets.US_ASCII);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the stored blob UID, rebuilding it from
+     * its chain of deltas if need be. Rebuilt blobs and the bases they
+     * were built from are kept in CACHE.
+     * @param uid SHA1 of the blob
+     * @return
+     */
+    private static byte[] contents(String uid) {
+        byte[] cached = CACHE.get(uid);
+        if (cached != null) {
+            return cached;
+        }
+        try (InputStream in = Repository.BLOB_STORE.open(uid)) {
+            if (in == null) {
+                throw new IllegalArgumentException("missing blob " + uid);
+            }
+            byte[] head = in.readNBytes(MAGIC.length);
+            if (Arrays.equals(head, MAGIC)) {
+                return in.readAllBytes();
+            } else if (Arrays.equals(head, DELTA_MAGIC)) {
+                String base = new String(in.readNBytes(Utils.UID_LENGTH),
+                        StandardCharsets.US_ASCII);
+                in.read();
+                byte[] baseContents = contents(base);
+                CACHE.put(base, baseContents);
+                byte[] result = Delta.apply(baseContents, in.readAllBytes());
+                CACHE.put(uid, result);
+                return result;
+            }
+            byte[] all = concat(head, in.readAllBytes());
+            return Utils.deserialize(all, Blob.class)._contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the length of the contents of the stored blob UID
+     * without holding them: a delta records the length of its result,
+     * and a whole blob is read through and counted.
+     * @param uid SHA1 of the blob
+     * @return
+     */
+    static long size(String uid) {
+        try (InputStream in = Repository.BLOB_STORE.open(uid)) {
+            if (in == null) {
+                throw new IllegalArgumentException("missing blob " + uid);
+            }
+            byte[] head = in.readNBytes(MAGIC.length);
+            if (Arrays.equals(head, MAGIC)) {
+                return in.transferTo(OutputStream.nullOutputStream());
+            } else if (Arrays.equals(head, DELTA_MAGIC)) {
+                in.skipNBytes(Utils.UID_LENGTH + 1);
+                return Delta.targetLength(in);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return contents(uid).length;
+    }
+
+    /** Returns the current stored form of the blob serialized by an
+     * older version as DATA.
+     * @param data stored bytes
+     * @return
+     */
+    static byte[] upgrade(byte[] data) {
+        return concat(MAGIC, Utils.deserialize(data, Blob.class)._contents);
+    }
+
+    /** Returns A followed by B.
+     * @param a first bytes
+     * @param b last bytes
+     * @return
+     */
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
     }
 
     /** This method allows other classes to acces UID.
@@ -29,6 +255,11 @@ public class Blob implements Serializable {
      * @return
      */
     byte[] getContents() {
+        if (_contents == null && _file != null) {
+            _contents = Utils.readContents(_file);
+        } else if (_contents == null) {
+            _contents = contents(_UID);
+        }
         return _contents;
     }
 
@@ -36,9 +267,50 @@ public class Blob implements Serializable {
      * @return
      */
     String getStringCont() {
+        if (stringCont == null) {
+            stringCont = new String(getContents(), StandardCharsets.UTF_8);
+        }
         return stringCont;
     }
 
+    /** Writes the contents of this blob to FILE. A stored blob is moved
+     * straight from the object store with transferTo. Blobs serialized
+     * by older versions do not start with MAGIC and are deserialized.
+     * @param file the working-tree file
+     */
+    void writeTo(File file) {
+        if (_contents == null && _file == null
+                && Repository.BLOB_STORE.startsWith(_UID, MAGIC)
+                && Repository.BLOB_STORE.transferTo(_UID, MAGIC.length,
+                        file)) {
+            return;
+        }
+        Utils.writeContents(file, getContents());
+    }
+
+    /** Prefix of a stored blob. */
+    static final byte[] MAGIC = {'b', 'l', 'o', 'b'};
+
+    /** Prefix of a blob stored as a delta. It is followed by the UID of
+     * the base, the length of the chain as one byte, and the delta. */
+    static final byte[] DELTA_MAGIC = {'b', 'd', 'l', 't'};
+
+    /** Smallest file stored as a delta. */
+    static final long DELTA_MIN = 1 << 12;
+
+    /** Largest file stored as a delta; larger ones are streamed. */
+    static final long DELTA_MAX = 1 << 26;
+
+    /** Longest chain of deltas from a blob to a whole one. */
+    static final int MAX_CHAIN = 16;
+
+    /** Rebuilt blobs by UID, up to 64 MiB of them. */
+    private static final LruCache<byte[]> CACHE =
+        new LruCache<>(1 << 26, b -> b.length);
+
+    /** Matches the version written by older releases. */
+    private static final long serialVersionUID = 108365017526230907L;
+
     /** Represents this blobs Universal ID. */
     private String _UID;
 
@@ -51,4 +323,7 @@ public class Blob implements Serializable {
     /** Holds the String vers of contents. */
     private String stringCont;
 
+    /** The working-tree file this blob was hashed from, if any. */
+    private transient File _file;
+
 }
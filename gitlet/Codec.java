@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The compression codecs an object may be stored with. A compressed
+ *  object starts with the four bytes 'z', 'i', 'p' and the codec's id,
+ *  followed by the compressed object. An object without that header is
+ *  stored uncompressed, which is how every object written before
+ *  codecs existed is read.
+ *  @author shivang singh
+ */
+enum Codec {
+    /** No compression: the object is stored as is. */
+    NONE(0) {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return in;
+        }
+    },
+
+    /** java.util.zip Deflate: the smallest objects. */
+    DEFLATE(1) {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return new DeflaterOutputStream(out);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    },
+
+    /** LzCodec: larger than Deflate, but much faster to read back. */
+    LZ(2) {
+        @Override
+        OutputStream compress(OutputStream out) {
+            return LzCodec.compress(out);
+        }
+
+        @Override
+        InputStream decompress(InputStream in) {
+            return LzCodec.decompress(in);
+        }
+    };
+
+    /** A codec whose header byte is ID. */
+    Codec(int id) {
+        _id = (byte) id;
+    }
+
+    /** Returns a stream that writes what is written to it onto OUT in
+     *  this codec, without a header. Closing it closes OUT. */
+    abstract OutputStream compress(OutputStream out);
+
+    /** Returns a stream of the data encoded in this codec in IN. */
+    abstract InputStream decompress(InputStream in);
+
+    /** Returns a stream that writes the header of this codec and then
+     *  the compressed form of what is written to it onto OUT. */
+    OutputStream encoder(OutputStream out) throws IOException {
+        if (this != NONE) {
+            out.write(HEADER);
+            out.write(_id);
+        }
+        return compress(out);
+    }
+
+    /** Returns DATA as stored with this codec: compressed with a header,
+     *  or as is if compression would not make it smaller. */
+    byte[] encode(byte[] data) {
+        if (this == NONE) {
+            return data;
+        }
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            OutputStream out = encoder(result);
+            out.write(data);
+            out.close();
+            return result.size() < data.length ? result.toByteArray() : data;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the codec of an object whose first bytes are PREFIX, of
+     *  which there are LEN. */
+    static Codec of(byte[] prefix, int len) {
+        if (len < HEADER_LENGTH) {
+            return NONE;
+        }
+        for (int i = 0; i < HEADER.length; i += 1) {
+            if (prefix[i] != HEADER[i]) {
+                return NONE;
+            }
+        }
+        for (Codec c : values()) {
+            if (c._id == prefix[HEADER.length]) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("unknown codec "
+                + prefix[HEADER.length]);
+    }
+
+    /** Returns the codec named, in any case, by the gitlet.codec
+     *  property, or DEFLATE if it is not set. An unknown name is
+     *  reported and ends the command. */
+    static Codec configured() {
+        String name = System.getProperty("gitlet.codec", DEFLATE.name());
+        for (Codec c : values()) {
+            if (c.name().equalsIgnoreCase(name)) {
+                return c;
+            }
+        }
+        String msg = "No codec named " + name + "; use none, deflate or lz.";
+        System.out.println(msg);
+        throw new GitletException(msg);
+    }
+
+    /** Length of the header of a compressed object. */
+    static final int HEADER_LENGTH = 4;
+
+    /** Leading bytes of a compressed object. */
+    private static final byte[] HEADER = {'z', 'i', 'p'};
+
+    /** The header byte naming this codec. */
+    private final byte _id;
+}
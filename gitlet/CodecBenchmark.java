@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A benchmark comparing the object codecs, whose main program may be
+ *  invoked as follows:
+ *      java gitlet.CodecBenchmark DIR...
+ *  For each Codec it stores every plain file in each DIR as a blob in a
+ *  scratch object store, and then checks all of them out ROUNDS times.
+ *  It prints the disk footprint of the store against the total size of
+ *  the files, and the write and checkout throughput.
+ *  @author shivang singh
+ */
+public class CodecBenchmark {
+
+    /** Run the benchmark over the files in DIRS. */
+    public static void main(String... dirs) throws IOException {
+        List<File> files = new ArrayList<>();
+        long total = 0;
+        for (String dir : dirs) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                File f = Utils.join(dir, name);
+                files.add(f);
+                total += f.length();
+            }
+        }
+        System.out.printf("%d files, %d bytes%n", files.size(), total);
+        System.out.printf("%-8s %12s %7s %12s %13s%n", "codec", "stored",
+                "ratio", "add MB/s", "checkout MB/s");
+        for (Codec codec : Codec.values()) {
+            run(codec, files, total);
+        }
+    }
+
+    /** Stores and checks out FILES, which hold TOTAL bytes, with CODEC,
+     *  and prints the results. */
+    private static void run(Codec codec, List<File> files, long total)
+        throws IOException {
+        File scratch = Files.createTempDirectory("gitlet-bench").toFile();
+        File loose = new File(scratch, "blobs");
+        loose.mkdir();
+        ObjectStore store = new ObjectStore(loose,
+                new File(scratch, "packs"), codec);
+        List<String> ids = new ArrayList<>();
+        long start = System.nanoTime();
+        for (File f : files) {
+            try (InputStream in = Files.newInputStream(f.toPath())) {
+                ids.add(store.store(Blob.MAGIC, in));
+            }
+        }
+        double addSecs = (System.nanoTime() - start) / 1e9;
+        long stored = 0;
+        for (File dir : loose.listFiles()) {
+            for (File f : dir.listFiles()) {
+                stored += f.length();
+            }
+        }
+        File out = new File(scratch, "out");
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round += 1) {
+            for (String id : ids) {
+                store.transferTo(id, Blob.MAGIC.length, out);
+            }
+        }
+        double checkoutSecs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-8s %12d %7.3f %12.1f %13.1f%n",
+                codec.name().toLowerCase(), stored,
+                total == 0 ? 1.0 : (double) stored / total,
+                total / MB / addSecs, ROUNDS * total / MB / checkoutSecs);
+        for (File dir : loose.listFiles()) {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+        loose.delete();
+        out.delete();
+        scratch.delete();
+    }
+
+    /** Number of times every blob is checked out. */
+    private static final int ROUNDS = 5;
+    /** Bytes in a megabyte. */
+    private static final double MB = 1 << 20;
+}
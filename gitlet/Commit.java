@@ -1,12 +1,23 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.TreeSet;
 
 /**
  * This class represents one commit
- * and all of its contents.
+ * and all of its contents. Commits are stored in a compact binary
+ * form (see encode) that names the Tree of their files; ones that list
+ * every file, and ones serialized by older versions, are still read.
  * @author shivang singh
  */
 public class Commit implements Serializable {
@@ -18,27 +29,30 @@ public class Commit implements Serializable {
      * @param p1 p2
      * @param p2  p1
      * @param time  timesStamp
+     * @param root UID of the tree of files
      */
-    Commit(String msg, String time, String p1, String p2) {
+    Commit(String msg, String time, String p1, String p2, String root) {
         logMsg = msg;
         timeStamp = time;
         parent1 = p1;
         parent2 = p2;
-        uid = Utils.sha1(Utils.serialize(this));
+        tree = root;
+        blobMap = null;
+        uid = Utils.sha1(encodeBody());
     }
 
     /** Normal constructor to create new commit.
      * @param parent Parent of commit
      * @param msg Message
      * @param time Timestamp
+     * @param root UID of the tree of files
      */
-    @SuppressWarnings({"unchecked", "deprecated"})
-    Commit(Commit parent, String msg, String time) {
-        logMsg = msg;
-        timeStamp = time;
-        parent1 = parent.getUID();
-        blobMap = (HashMap<String, String>) parent.blobMap.clone();
-        uid = Utils.sha1(Utils.serialize(this));
+    Commit(Commit parent, String msg, String time, String root) {
+        this(msg, time, parent.getUID(), null, root);
+    }
+
+    /** A commit read back from storage. */
+    private Commit() {
     }
 
     /** Sets uid.
@@ -91,26 +105,225 @@ public class Commit implements Serializable {
     }
 
     /** Takes care of formatting for log.
+     * @param out where the entry is written
      */
-    void log() {
-        System.out.println("===");
-        System.out.println("commit " + getUID());
+    void log(PrintWriter out) {
+        out.println("===");
+        out.println("commit " + getUID());
         if (getP2() != null) {
-            System.out.println("Merge: " + getP1().substring(0, 7)
+            out.println("Merge: " + getP1().substring(0, 7)
                     + " " + getP2().substring(0, 7));
         }
-        System.out.println("Date: " + timeStamp);
-        System.out.println(getLogMsg());
-        System.out.println();
+        out.println("Date: " + timeStamp);
+        out.println(getLogMsg());
+        out.println();
     }
 
-    /** Returns blobMap.
+    /** Returns a map from the path of every file to its blob UID. It
+     * must not be modified. A commit that names a tree does not keep
+     * the map, which can be far larger than the commit, so that the
+     * commits cached stay the weight they say they are; maps read from
+     * trees are cached by tree in FILES, which weighs them in full.
      * @return
      */
     HashMap<String, String> getMap() {
-        return blobMap;
+        if (listsFiles) {
+            return blobMap;
+        }
+        HashMap<String, String> files = FILES.get(tree);
+        if (files == null) {
+            files = new HashMap<>();
+            Tree.flatten(tree, "", files);
+            FILES.put(tree, files);
+        }
+        return files;
+    }
+
+    /** Returns the UID of the tree of this commit's files, storing one
+     * first if this commit lists its files instead.
+     * @return
+     */
+    synchronized String getTree() {
+        if (tree == null) {
+            tree = Tree.write(blobMap);
+        }
+        return tree;
+    }
+
+    /** Returns roughly how many bytes of memory this commit uses, not
+     * counting its files when they are held in a tree.
+     * @return
+     */
+    long weight() {
+        return BASE_WEIGHT + 2 * (logMsg.length() + timeStamp.length())
+                + (listsFiles ? ENTRY_WEIGHT * blobMap.size() : 0);
+    }
+
+    /** Returns this commit in its stored form: MAGIC, the UID as 20
+     * bytes, and then the body. A commit that lists its files instead
+     * of naming a tree, as those of the first version of this form did,
+     * keeps that form so that its UID still matches.
+     * @return
+     */
+    byte[] encode() {
+        byte[] body = encodeBody();
+        byte[] magic = listsFiles ? MAGIC_V1 : MAGIC;
+        byte[] result = new byte[MAGIC.length + UID_BYTES + body.length];
+        System.arraycopy(magic, 0, result, 0, MAGIC.length);
+        System.arraycopy(Utils.fromHex(uid), 0, result, MAGIC.length,
+                UID_BYTES);
+        System.arraycopy(body, 0, result, MAGIC.length + UID_BYTES,
+                body.length);
+        return result;
+    }
+
+    /** Returns the body of this commit's stored form, from which its UID
+     * is computed: a byte saying which parents are present, those parents
+     * as 20 bytes each, the timestamp, the message, and the UID of the
+     * tree, or in the first version the number of tracked files followed
+     * by each name and blob UID in name order. Strings are an int length
+     * and UTF-8 bytes.
+     * @return
+     */
+    private byte[] encodeBody() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte((parent1 != null ? 1 : 0)
+                    | (parent2 != null ? 2 : 0));
+            if (parent1 != null) {
+                out.write(Utils.fromHex(parent1));
+            }
+            if (parent2 != null) {
+                out.write(Utils.fromHex(parent2));
+            }
+            writeString(out, timeStamp);
+            writeString(out, logMsg);
+            if (listsFiles) {
+                out.writeInt(blobMap.size());
+                for (String name : new TreeSet<>(blobMap.keySet())) {
+                    writeString(out, name);
+                    out.write(Utils.fromHex(blobMap.get(name)));
+                }
+            } else {
+                out.write(Utils.fromHex(tree));
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+    }
+
+    /** Returns the commit whose stored form is DATA, which may also be a
+     * commit serialized by an older version.
+     * @param data stored bytes
+     * @return
+     */
+    static Commit decode(byte[] data) {
+        if (!isEncoded(data)) {
+            Commit c = Utils.deserialize(data, Commit.class);
+            c.listsFiles = true;
+            return c;
+        }
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(data));
+            in.skipNBytes(MAGIC.length);
+            Commit c = new Commit();
+            c.uid = readUID(in);
+            int parents = in.readByte();
+            if ((parents & 1) != 0) {
+                c.parent1 = readUID(in);
+            }
+            if ((parents & 2) != 0) {
+                c.parent2 = readUID(in);
+            }
+            c.timeStamp = readString(in);
+            c.logMsg = readString(in);
+            c.listsFiles = data[MAGIC.length - 1] == MAGIC_V1[MAGIC.length - 1];
+            if (c.listsFiles) {
+                c.blobMap = new HashMap<>();
+                for (int n = in.readInt(); n > 0; n -= 1) {
+                    String name = readString(in);
+                    c.blobMap.put(name, readUID(in));
+                }
+            } else {
+                c.blobMap = null;
+                c.tree = readUID(in);
+            }
+            return c;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("corrupt commit");
+        }
+    }
+
+    /** Returns true iff DATA is in the current stored form rather than
+     * serialized by an older version.
+     * @param data stored bytes
+     * @return
+     */
+    static boolean isEncoded(byte[] data) {
+        return data.length >= MAGIC.length
+                && (Arrays.equals(data, 0, MAGIC.length, MAGIC, 0,
+                            MAGIC.length)
+                    || Arrays.equals(data, 0, MAGIC.length, MAGIC_V1, 0,
+                            MAGIC.length));
+    }
+
+    /** Writes S to OUT as its length and UTF-8 bytes.
+     * @param out the stream
+     * @param s the string
+     */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads a string written by writeString from IN.
+     * @param in the stream
+     * @return
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
+    /** Reads a 20-byte UID from IN.
+     * @param in the stream
+     * @return
+     */
+    private static String readUID(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[UID_BYTES];
+        in.readFully(bytes);
+        return Utils.toHex(bytes);
+    }
+
+    /** Prefix of a stored commit: "cmt" and the format version. */
+    static final byte[] MAGIC = {'c', 'm', 't', 2};
+
+    /** Prefix of a stored commit that lists its files. */
+    static final byte[] MAGIC_V1 = {'c', 'm', 't', 1};
+
+    /** Approximate bytes used by a commit apart from its strings. */
+    private static final long BASE_WEIGHT = 400;
+
+    /** Approximate bytes used by one entry of a blob map. */
+    private static final long ENTRY_WEIGHT = 200;
+
+    /** Maps of files read from trees, by tree UID. */
+    private static final LruCache<HashMap<String, String>> FILES =
+        new LruCache<>(1 << 25, m -> BASE_WEIGHT + ENTRY_WEIGHT * m.size());
+
+    /** Length of a UID in binary. */
+    private static final int UID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Matches the version written by older releases. */
+    private static final long serialVersionUID = 7071573788743403405L;
+
     /** Stores the message user inputted for commit. */
     private String logMsg;
     /** Holds the timestamp for the commit. */
@@ -124,7 +337,13 @@ public class Commit implements Serializable {
      */
     private String parent2;
     /** This Hashmap has key value pairs that consist of the file
-     * name, and the corresponding UID for that blob.
+     * name, and the corresponding UID for that blob. Null until read
+     * from the tree.
      */
     private HashMap<String, String> blobMap = new HashMap<String, String>();
+    /** UID of the tree of files, or null if this commit lists them. */
+    private String tree;
+    /** True iff this commit lists its files in its stored form rather
+     * than naming a tree. */
+    private transient boolean listsFiles;
 }
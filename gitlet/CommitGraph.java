@@ -0,0 +1,468 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+
+/** A persistent index of the shape of the commit history, so that
+ *  history can be walked without opening any commit objects. Each
+ *  commit has a position; the file holds MAGIC, an epoch and then one
+ *  fixed-size record per commit in position order: its UID, the
+ *  positions of its parents (-1 for none) and its generation number,
+ *  which is one more than the largest generation of its parents. A
+ *  commit's parents always come before it, so new commits are simply
+ *  appended. The epoch goes up each time the file is rewritten and the
+ *  positions may have changed.
+ *  @author shivang singh
+ */
+class CommitGraph {
+
+    /** The commit graph stored in FILE, read on first use. */
+    CommitGraph(File file) {
+        _file = file;
+    }
+
+    /** Forgets what has been read, so that the file is read again. */
+    void invalidate() {
+        _ids = null;
+        _index.clear();
+        _size = 0;
+        _length = 0;
+        _epoch = 0;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        load();
+        return _size;
+    }
+
+    /** Returns the position of commit ID, or -1 if it is not here. */
+    int indexOf(String id) {
+        load();
+        Integer k = _index.get(id);
+        return k == null ? -1 : k;
+    }
+
+    /** Returns the UID of the commit at position K. */
+    String id(int k) {
+        return _ids[k];
+    }
+
+    /** Returns the position of the first parent of commit K, or -1. */
+    int parent1(int k) {
+        return _parent1[k];
+    }
+
+    /** Returns the position of the second parent of commit K, or -1. */
+    int parent2(int k) {
+        return _parent2[k];
+    }
+
+    /** Returns the generation number of commit K. */
+    int generation(int k) {
+        return _generation[k];
+    }
+
+    /** Returns the position of commit ID, first adding it and any of its
+     *  ancestors that are missing by reading them with LOADER. */
+    int ensure(String id, Function<String, Commit> loader) {
+        int k = indexOf(id);
+        if (k >= 0) {
+            return k;
+        }
+        ArrayDeque<Commit> stack = new ArrayDeque<>();
+        stack.push(loader.apply(id));
+        while (!stack.isEmpty()) {
+            Commit c = stack.peek();
+            boolean ready = true;
+            for (String p : c.getParents()) {
+                if (indexOf(p) < 0) {
+                    stack.push(loader.apply(p));
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                if (indexOf(c.getUID()) < 0) {
+                    add(c.getUID(), c.getP1(), c.getP2());
+                }
+            }
+        }
+        return indexOf(id);
+    }
+
+    /** Appends commit ID with parents P1 and P2, either of which may be
+     *  null, and returns its position. The parents must already be in
+     *  the graph. Appends are made under a lock, after reading any
+     *  records another process has appended, so that positions in the
+     *  file stay those in memory. If the file has been rewritten since
+     *  it was read, the positions read are stale and it is read afresh. */
+    int add(String id, String p1, String p2) {
+        try (LockFile lock = LockFile.acquire(_file)) {
+            if (_ids != null && (_length == 0 || readEpoch() != _epoch)) {
+                invalidate();
+            }
+            load();
+            readRecords();
+            if (_index.containsKey(id)) {
+                return _index.get(id);
+            }
+            lock.ensureHeld();
+            truncate();
+            return append(id, p1, p2);
+        }
+    }
+
+    /** Appends commit ID with parents P1 and P2 to the file and the
+     *  graph in memory, and returns its position. */
+    private int append(String id, String p1, String p2) {
+        int k = _size;
+        int i1 = p1 == null ? -1 : indexOf(p1);
+        int i2 = p2 == null ? -1 : indexOf(p2);
+        if ((p1 != null && i1 < 0) || (p2 != null && i2 < 0)) {
+            throw new IllegalArgumentException("parent missing from graph");
+        }
+        int gen = 1 + Math.max(i1 < 0 ? 0 : _generation[i1],
+                               i2 < 0 ? 0 : _generation[i2]);
+        put(id, i1, i2, gen);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        _file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)))) {
+            if (_file.length() == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(_epoch);
+                _length = HEADER_BYTES;
+            }
+            out.write(Utils.fromHex(id));
+            out.writeInt(i1);
+            out.writeInt(i2);
+            out.writeInt(gen);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _length += RECORD_BYTES;
+        return k;
+    }
+
+    /** Drops the commits GONE from the graph, none of which may be a
+     *  parent of a commit that stays, and closes up the positions of the
+     *  rest. The file is written afresh with the next epoch and renamed
+     *  over the old one under the lock, so other processes see it whole
+     *  and, finding its epoch changed, read it again before they next
+     *  append. */
+    void remove(Set<String> gone) {
+        try (LockFile lock = LockFile.acquire(_file)) {
+            invalidate();
+            load();
+            int[] moved = new int[_size];
+            int n = 0;
+            for (int k = 0; k < _size; k += 1) {
+                if (gone.contains(_ids[k])) {
+                    moved[k] = -1;
+                } else if ((_parent1[k] >= 0 && moved[_parent1[k]] < 0)
+                        || (_parent2[k] >= 0 && moved[_parent2[k]] < 0)) {
+                    throw new IllegalArgumentException(
+                        "parent of " + _ids[k] + " removed");
+                } else {
+                    moved[k] = n;
+                    n += 1;
+                }
+            }
+            File tmp = new File(_file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(_epoch + 1);
+                for (int k = 0; k < _size; k += 1) {
+                    if (moved[k] >= 0) {
+                        out.write(Utils.fromHex(_ids[k]));
+                        out.writeInt(_parent1[k] < 0 ? -1
+                                     : moved[_parent1[k]]);
+                        out.writeInt(_parent2[k] < 0 ? -1
+                                     : moved[_parent2[k]]);
+                        out.writeInt(_generation[k]);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            lock.ensureHeld();
+            try {
+                Files.move(tmp.toPath(), _file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            invalidate();
+        }
+    }
+
+    /** Returns true iff commit A is B or one of its ancestors. Commits
+     *  whose generation is below A's cannot lead to A and are not
+     *  visited. */
+    boolean isAncestor(int a, int b) {
+        boolean[] seen = new boolean[_size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int k = queue.poll();
+            if (k == a) {
+                return true;
+            }
+            if (k < 0 || seen[k] || _generation[k] <= _generation[a]) {
+                continue;
+            }
+            seen[k] = true;
+            queue.add(_parent1[k]);
+            queue.add(_parent2[k]);
+        }
+        return false;
+    }
+
+    /** Returns the best common ancestors of commits A and B: those that
+     *  are ancestors of both and not ancestors of another such commit.
+     *  Commits are painted from both sides at once, highest generation
+     *  first, so each is visited once and the walk stops as soon as every
+     *  commit left to visit is below a common ancestor already found.
+     *  A commit's parents have lower generations than it does, so its
+     *  paint is final by the time it leaves the queue. */
+    int[] mergeBases(int a, int b) {
+        if (a == b) {
+            return new int[] { a };
+        }
+        byte[] paint = new byte[_size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> _generation[x] != _generation[y]
+                ? Integer.compare(_generation[y], _generation[x])
+                : Integer.compare(y, x));
+        paint[a] = FROM_A;
+        paint[b] = FROM_B;
+        queue.add(a);
+        queue.add(b);
+        int active = 2;
+        ArrayList<Integer> found = new ArrayList<>();
+        while (active > 0) {
+            int k = queue.poll();
+            int flags = paint[k];
+            if ((flags & STALE) == 0) {
+                active -= 1;
+            }
+            if ((flags & BOTH) == BOTH && (flags & STALE) == 0) {
+                found.add(k);
+                flags |= STALE;
+                paint[k] = (byte) flags;
+            }
+            for (int p : new int[] { _parent1[k], _parent2[k] }) {
+                if (p < 0 || (paint[p] | flags) == paint[p]) {
+                    continue;
+                }
+                int old = paint[p];
+                paint[p] |= flags;
+                if (old == 0) {
+                    queue.add(p);
+                    if ((flags & STALE) == 0) {
+                        active += 1;
+                    }
+                } else if ((old & STALE) == 0 && (flags & STALE) != 0) {
+                    active -= 1;
+                }
+            }
+        }
+        return found.stream().filter(x -> found.stream()
+                    .noneMatch(y -> !y.equals(x) && isAncestor(x, y)))
+            .mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Returns whichever of TARGETS is reached first by a breadth-first
+     *  walk from commit FROM that visits first parents before second
+     *  parents, or -1 if none is. */
+    int nearest(int from, int[] targets) {
+        boolean[] wanted = new boolean[_size];
+        for (int t : targets) {
+            wanted[t] = true;
+        }
+        boolean[] seen = new boolean[_size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            int k = queue.poll();
+            if (k < 0 || seen[k]) {
+                continue;
+            }
+            if (wanted[k]) {
+                return k;
+            }
+            seen[k] = true;
+            queue.add(_parent1[k]);
+            queue.add(_parent2[k]);
+        }
+        return -1;
+    }
+
+    /** Deletes the graph file if it is in the layout used before it had
+     *  an epoch, so that it is built again. */
+    void upgrade() {
+        try (LockFile lock = LockFile.acquire(_file)) {
+            if (_file.isFile() && _file.length() >= 4) {
+                ByteBuffer data = ByteBuffer.wrap(Utils.readContents(_file));
+                if (data.getInt() == OLD_MAGIC) {
+                    lock.ensureHeld();
+                    _file.delete();
+                }
+            }
+            invalidate();
+        }
+    }
+
+    /** Reads the graph file if that has not been done. A partial record
+     *  at the end, left by an append that was interrupted or is still
+     *  being written, is ignored. */
+    private void load() {
+        if (_ids != null) {
+            return;
+        }
+        _ids = new String[INITIAL_CAPACITY];
+        _parent1 = new int[INITIAL_CAPACITY];
+        _parent2 = new int[INITIAL_CAPACITY];
+        _generation = new int[INITIAL_CAPACITY];
+        if (!_file.isFile()) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Utils.readContents(_file));
+        if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC) {
+            throw new IllegalArgumentException("bad commit graph");
+        }
+        _epoch = data.getInt();
+        _length = HEADER_BYTES;
+        read(data);
+    }
+
+    /** Reads the whole records appended to the file since it was last
+     *  read. */
+    private void readRecords() {
+        if (_length == 0 || _file.length() < _length + RECORD_BYTES) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Utils.readContents(_file));
+        data.position((int) _length);
+        read(data);
+    }
+
+    /** Adds the whole records in DATA, which start at _length in the
+     *  file. */
+    private void read(ByteBuffer data) {
+        byte[] raw = new byte[UID_BYTES];
+        while (data.remaining() >= RECORD_BYTES) {
+            data.get(raw);
+            put(Utils.toHex(raw), data.getInt(), data.getInt(),
+                    data.getInt());
+            _length += RECORD_BYTES;
+        }
+    }
+
+    /** Returns the epoch in the header of the file, or 0 if it has
+     *  none. */
+    private int readEpoch() {
+        try (DataInputStream in = new DataInputStream(
+                Files.newInputStream(_file.toPath()))) {
+            in.readInt();
+            return in.readInt();
+        } catch (NoSuchFileException | EOFException excp) {
+            return 0;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Cuts off a partial record left at the end of the file by an
+     *  interrupted append. Only called with the lock held. */
+    private void truncate() {
+        if (_file.length() <= _length) {
+            return;
+        }
+        try (FileChannel out = FileChannel.open(_file.toPath(),
+                StandardOpenOption.WRITE)) {
+            out.truncate(_length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Records commit ID at the next position, with parents at I1 and I2
+     *  and generation GEN. */
+    private void put(String id, int i1, int i2, int gen) {
+        if (_size == _ids.length) {
+            int n = 2 * _size;
+            _ids = Arrays.copyOf(_ids, n);
+            _parent1 = Arrays.copyOf(_parent1, n);
+            _parent2 = Arrays.copyOf(_parent2, n);
+            _generation = Arrays.copyOf(_generation, n);
+        }
+        _ids[_size] = id;
+        _parent1[_size] = i1;
+        _parent2[_size] = i2;
+        _generation[_size] = gen;
+        _index.put(id, _size);
+        _size += 1;
+    }
+
+    /** Leading word of the graph file. */
+    private static final int MAGIC = 0x47475232;
+    /** Leading word of graph files written before they had an epoch. */
+    private static final int OLD_MAGIC = 0x47475248;
+    /** Size of the header: MAGIC and the epoch. */
+    private static final int HEADER_BYTES = 8;
+    /** Length of a UID in binary. */
+    private static final int UID_BYTES = Utils.UID_LENGTH / 2;
+    /** Size of one record: UID, two parents and a generation. */
+    private static final int RECORD_BYTES = UID_BYTES + 12;
+    /** Paint on ancestors of the first commit given to mergeBases. */
+    private static final int FROM_A = 1;
+    /** Paint on ancestors of the second commit given to mergeBases. */
+    private static final int FROM_B = 2;
+    /** Paint on ancestors of both. */
+    private static final int BOTH = FROM_A | FROM_B;
+    /** Paint on ancestors of a common ancestor already found. */
+    private static final int STALE = 4;
+    /** Initial length of the arrays. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The graph file. */
+    private final File _file;
+    /** Position of each commit by UID. */
+    private final HashMap<String, Integer> _index = new HashMap<>();
+    /** Number of commits. */
+    private int _size;
+    /** Length of the part of the file read. */
+    private long _length;
+    /** Epoch of the file read. */
+    private int _epoch;
+    /** UIDs by position, or null before the file is read. */
+    private String[] _ids;
+    /** First parents by position. */
+    private int[] _parent1;
+    /** Second parents by position. */
+    private int[] _parent2;
+    /** Generation numbers by position. */
+    private int[] _generation;
+}
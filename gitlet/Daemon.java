@@ -0,0 +1,242 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/** A long-running server for one repository, so that commands do not
+ *  each pay for starting a JVM and for loading the repository and its
+ *  caches from disk. It listens on a Unix domain socket in the .gitlet
+ *  directory and runs one command at a time against a Repository it
+ *  keeps, sending back what the command printed. If some other process
+ *  has updated the repository since the last command, as shown by the
+ *  files the state and caches are read from, they are read again. A
+ *  request is the number of arguments and each argument as modified
+ *  UTF-8, followed by each of the FORWARDED properties the client was
+ *  started with, as a flag saying whether it is set and its value if
+ *  so; the daemon runs the command with those properties in place of
+ *  its own. A reply is the exit status and then the standard output
+ *  and standard error, each as a length and bytes.
+ *  @author shivang singh
+ */
+class Daemon {
+
+    /** Runs the command ARGS on the daemon for the repository here, if
+     *  one is running, copying what it prints to System.out and
+     *  System.err. Returns its exit status, or NOT_RUNNING if no daemon
+     *  answered, in which case the command has not been run. */
+    static int forward(String... args) {
+        if (!SOCKET.exists()) {
+            return NOT_RUNNING;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(address());
+        } catch (IOException excp) {
+            return NOT_RUNNING;
+        }
+        try (SocketChannel ch = channel;
+             DataOutputStream out = new DataOutputStream(
+                 Channels.newOutputStream(ch));
+             DataInputStream in = new DataInputStream(
+                 Channels.newInputStream(ch))) {
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            for (String name : FORWARDED) {
+                String value = System.getProperty(name);
+                out.writeBoolean(value != null);
+                if (value != null) {
+                    out.writeUTF(value);
+                }
+            }
+            out.flush();
+            int status = in.readInt();
+            System.out.write(readBytes(in));
+            System.out.flush();
+            System.err.write(readBytes(in));
+            System.err.flush();
+            return status;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Serves commands for the repository here until one asks the
+     *  daemon to stop ("daemon stop"). */
+    static void serve() {
+        if (!Repository.GITLET.isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (forward("daemon", "ping") != NOT_RUNNING) {
+            System.out.println("A daemon is already running here.");
+            return;
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(SOCKET.toPath());
+            server.bind(address());
+            Daemon daemon = new Daemon();
+            while (!daemon._stopped) {
+                try (SocketChannel client = server.accept()) {
+                    daemon.handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    /** Reads one request from CLIENT, runs it and sends the reply. */
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in =
+            new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int k = 0; k < args.length; k += 1) {
+            args[k] = in.readUTF();
+        }
+        String[] properties = new String[FORWARDED.length];
+        for (int k = 0; k < properties.length; k += 1) {
+            properties[k] = in.readBoolean() ? in.readUTF() : null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream stdout = System.out, stderr = System.err;
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(err, true));
+        properties = setProperties(properties);
+        int status = 0;
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            _repo = null;
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            _repo = null;
+            status = 1;
+        } finally {
+            setProperties(properties);
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        DataOutputStream reply =
+            new DataOutputStream(Channels.newOutputStream(client));
+        reply.writeInt(status);
+        reply.writeInt(out.size());
+        out.writeTo(reply);
+        reply.writeInt(err.size());
+        err.writeTo(reply);
+        reply.flush();
+    }
+
+    /** Runs the command ARGS, first reloading the repository if another
+     *  process has changed it. After a command fails the repository is
+     *  read again before the next one, since the failed command may have
+     *  left the copy in memory half changed. */
+    private void run(String... args) {
+        if (args[0].equals("daemon")) {
+            _stopped = args.length == 2 && args[1].equals("stop");
+            return;
+        }
+        long stamp = stamp();
+        if (stamp != _stamp) {
+            Repository.invalidateCaches();
+            _repo = null;
+        }
+        if (_repo == null && Repository.HEAD.exists()) {
+            _repo = new Repository();
+        }
+        Main.run(_repo, args);
+        _stamp = stamp();
+    }
+
+    /** Sets each of the FORWARDED properties to the corresponding one of
+     *  VALUES, clearing it where that is null, and returns the values
+     *  they had in the same form. */
+    private static String[] setProperties(String[] values) {
+        String[] old = new String[FORWARDED.length];
+        for (int k = 0; k < FORWARDED.length; k += 1) {
+            old[k] = values[k] == null ? System.clearProperty(FORWARDED[k])
+                : System.setProperty(FORWARDED[k], values[k]);
+        }
+        return old;
+    }
+
+    /** Returns a value that changes whenever another process changes
+     *  what the daemon keeps in memory: the branches, the staging area,
+     *  the stat index, the commit graph, the message index or the packs.
+     *  Each file's identity, modification time and length go into it,
+     *  since a file replaced by renaming another over it is a new file
+     *  even if it was replaced within one tick of the clock. */
+    private static long stamp() {
+        long stamp = 0;
+        for (File f : WATCHED) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(f.toPath(),
+                        BasicFileAttributes.class);
+                stamp = stamp * 31 + Objects.hash(attrs.fileKey(),
+                        attrs.lastModifiedTime(), attrs.size());
+            } catch (IOException excp) {
+                stamp = stamp * 31;
+            }
+        }
+        return stamp;
+    }
+
+    /** Returns LENGTH bytes read from IN, after LENGTH itself. */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /** Returns the address of the socket. */
+    private static UnixDomainSocketAddress address() {
+        return UnixDomainSocketAddress.of(SOCKET.toPath());
+    }
+
+    /** Returned by forward when there is no daemon. */
+    static final int NOT_RUNNING = -1;
+
+    /** The system properties that change what a command does, which a
+     *  client sends with its request. */
+    private static final String[] FORWARDED = {
+        "gitlet.codec", "gitlet.verbose",
+    };
+
+    /** The files and directories whose changes stamp() notices. */
+    private static final File[] WATCHED = {
+        Repository.HEAD, Repository.BRANCHES, Repository.ADD,
+        Repository.REMOVE, Repository.JOURNAL_FILE, Repository.INDEX_FILE,
+        Repository.GRAPH_FILE, Repository.MESSAGES_FILE,
+        Repository.COMMIT_PACKS, Repository.TREE_PACKS,
+        Repository.BLOB_PACKS, Repository.VERSION,
+    };
+
+    /** The socket a daemon listens on. */
+    static final File SOCKET = new File(".gitlet//daemon.sock");
+
+    /** The repository, or null if it must be read again. */
+    private Repository _repo;
+    /** What stamp() returned after the last command. */
+    private long _stamp = -1;
+    /** True once asked to stop. */
+    private boolean _stopped;
+}
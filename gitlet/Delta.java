@@ -0,0 +1,188 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** Binary deltas between two versions of a file. A delta is the length
+ *  of the target followed by a list of instructions, each either
+ *  INSERT, a length and that many literal bytes, or COPY, an offset and
+ *  a length of bytes to take from the base. Lengths and offsets are
+ *  written as base-128 varints. Matches are found by hashing the base in
+ *  BLOCK-byte blocks and rolling a hash of the same width along the
+ *  target, so creating a delta is linear in the sizes of both.
+ *  @author shivang singh
+ */
+class Delta {
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        int[] index = index(base);
+        int mask = index.length - 1;
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int at = index[h & mask] - 1;
+            if (at >= 0 && same(base, at, target, i, BLOCK)) {
+                int s = at, t = i;
+                while (s > 0 && t > pending && base[s - 1] == target[t - 1]) {
+                    s -= 1;
+                    t -= 1;
+                }
+                int e = i + BLOCK;
+                for (int b = at + BLOCK; e < target.length && b < base.length
+                         && base[b] == target[e]; b += 1) {
+                    e += 1;
+                }
+                insert(out, target, pending, t);
+                out.write(COPY);
+                writeVarint(out, s);
+                writeVarint(out, e - t);
+                i = pending = e;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * POWER) * PRIME + target[i + BLOCK];
+                }
+                i += 1;
+            }
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        byte[] result = new byte[readVarint(in)];
+        int out = 0;
+        while (in.hasRemaining()) {
+            int op = in.get();
+            if (op == INSERT) {
+                int len = readVarint(in);
+                in.get(result, out, len);
+                out += len;
+            } else if (op == COPY) {
+                int from = readVarint(in);
+                int len = readVarint(in);
+                System.arraycopy(base, from, result, out, len);
+                out += len;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (out != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Returns the length of the target of the delta read from IN,
+     *  reading only the varint it starts with. */
+    static int targetLength(InputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Returns a hash table mapping the hash of each BLOCK-byte block of
+     *  BASE to one more than its offset, keeping the first on a
+     *  collision. Its length is a power of two. */
+    private static int[] index(byte[] base) {
+        int size = 2;
+        while (size < 2 * (base.length / BLOCK)) {
+            size <<= 1;
+        }
+        int[] result = new int[size];
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            int slot = hash(base, i) & (size - 1);
+            if (result[slot] == 0) {
+                result[slot] = i + 1;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the rolling hash of the BLOCK bytes at DATA[FROM]. */
+    private static int hash(byte[] data, int from) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + data[from + k];
+        }
+        return h;
+    }
+
+    /** Returns true iff the LEN bytes at A[I] and B[J] are equal. */
+    private static boolean same(byte[] a, int i, byte[] b, int j, int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes an INSERT of DATA[FROM .. TO) to OUT, if it is not empty. */
+    private static void insert(ByteArrayOutputStream out, byte[] data,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+    /** Writes the non-negative N to OUT as a varint. */
+    private static void writeVarint(ByteArrayOutputStream out, int n) {
+        while (n >= 0x80) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /** Reads a varint from IN. */
+    private static int readVarint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.get();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Opcode for literal bytes. */
+    private static final int INSERT = 0;
+    /** Opcode for bytes copied from the base. */
+    private static final int COPY = 1;
+    /** Width of the blocks that matches are found from. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+    /** PRIME to the power BLOCK - 1, to roll a byte out of the hash. */
+    private static final int POWER;
+
+    static {
+        int p = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            p *= PRIME;
+        }
+        POWER = p;
+    }
+}
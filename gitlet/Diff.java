@@ -0,0 +1,428 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** The differences between two texts, line by line. Lines are first
+ *  numbered so that equal lines have equal numbers, and the shortest
+ *  edit between the two sequences of numbers is then found with Myers'
+ *  O(ND) algorithm in its linear-space form: the middle of an optimal
+ *  edit is found by searching from both ends at once, and the halves on
+ *  either side of it are solved in the same way. As in git, a search
+ *  that grows too costly stops and splits at the furthest point either
+ *  end has reached, so very different texts get a good edit quickly
+ *  rather than a shortest one slowly.
+ *  @author shivang singh
+ */
+class Diff {
+
+    /** A region of the first text, lines A0 up to A1, that is replaced by
+     *  lines B0 up to B1 of the second. */
+    static final class Hunk {
+        /** The hunk replacing lines A0 to A1 by lines B0 to B1. */
+        Hunk(int a0, int a1, int b0, int b1) {
+            this.a0 = a0;
+            this.a1 = a1;
+            this.b0 = b0;
+            this.b1 = b1;
+        }
+
+        /** First line of the first text replaced. */
+        final int a0;
+        /** Line of the first text after the last one replaced. */
+        final int a1;
+        /** First line of the second text put in its place. */
+        final int b0;
+        /** Line of the second text after the last one put in its place. */
+        final int b1;
+    }
+
+    /** Returns where the lines of TEXT start, followed by its length: line
+     *  K is the bytes from element K up to element K + 1, including its
+     *  newline if it has one. */
+    static int[] lineStarts(byte[] text) {
+        int n = 0;
+        for (byte c : text) {
+            if (c == '\n') {
+                n += 1;
+            }
+        }
+        boolean partial = text.length > 0 && text[text.length - 1] != '\n';
+        int[] starts = new int[n + (partial ? 1 : 0) + 1];
+        int k = 1;
+        for (int i = 0; i < text.length; i += 1) {
+            if (text[i] == '\n') {
+                starts[k] = i + 1;
+                k += 1;
+            }
+        }
+        starts[starts.length - 1] = text.length;
+        return starts;
+    }
+
+    /** Returns a number for each line of each of TEXTS, whose lines start
+     *  at STARTS, such that two lines have the same number iff they have
+     *  the same bytes. */
+    static int[][] number(byte[][] texts, int[][] starts) {
+        HashMap<Line, Integer> numbers = new HashMap<>();
+        int[][] result = new int[texts.length][];
+        for (int t = 0; t < texts.length; t += 1) {
+            result[t] = new int[starts[t].length - 1];
+            for (int k = 0; k < result[t].length; k += 1) {
+                Line line = new Line(texts[t], starts[t][k],
+                                     starts[t][k + 1]);
+                Integer n = numbers.putIfAbsent(line, numbers.size());
+                result[t][k] = n == null ? numbers.size() - 1 : n;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the hunks that turn the lines A into the lines B, in
+     *  order. */
+    static List<Hunk> diff(int[] a, int[] b) {
+        Diff d = new Diff(a, b);
+        d.compare(0, a.length, 0, b.length);
+        ArrayList<Hunk> hunks = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            if ((i < a.length && d._changedA[i])
+                    || (j < b.length && d._changedB[j])) {
+                int i0 = i, j0 = j;
+                while (i < a.length && d._changedA[i]) {
+                    i += 1;
+                }
+                while (j < b.length && d._changedB[j]) {
+                    j += 1;
+                }
+                hunks.add(new Hunk(i0, i, j0, j));
+            } else {
+                i += 1;
+                j += 1;
+            }
+        }
+        return hunks;
+    }
+
+    /** Writes to OUT the differences between A and B, the old and new
+     *  versions of the file PATH, as a unified diff with CONTEXT lines
+     *  of context around each change. A version is null if the file is
+     *  missing. Files with a zero byte are only said to differ. */
+    static void unified(String path, byte[] a, byte[] b, OutputStream out)
+        throws IOException {
+        header(path, a != null, b != null, out);
+        byte[] oldText = a == null ? new byte[0] : a;
+        byte[] newText = b == null ? new byte[0] : b;
+        String oldName = a == null ? NO_FILE : "a/" + path;
+        String newName = b == null ? NO_FILE : "b/" + path;
+        if (binary(oldText) || binary(newText)) {
+            write(out, "Binary files " + oldName + " and " + newName
+                  + " differ\n");
+            return;
+        }
+        write(out, "--- " + oldName + "\n+++ " + newName + "\n");
+        byte[][] texts = { oldText, newText };
+        int[][] starts = { lineStarts(oldText), lineStarts(newText) };
+        int[][] lines = number(texts, starts);
+        List<Hunk> hunks = diff(lines[0], lines[1]);
+        for (int first = 0, last; first < hunks.size(); first = last) {
+            last = first + 1;
+            while (last < hunks.size() && hunks.get(last).a0
+                       - hunks.get(last - 1).a1 <= 2 * CONTEXT) {
+                last += 1;
+            }
+            Hunk h0 = hunks.get(first), h1 = hunks.get(last - 1);
+            int a0 = Math.max(0, h0.a0 - CONTEXT);
+            int a1 = Math.min(lines[0].length, h1.a1 + CONTEXT);
+            int b0 = h0.b0 - (h0.a0 - a0);
+            int b1 = h1.b1 + (a1 - h1.a1);
+            write(out, "@@ -" + range(a0, a1) + " +" + range(b0, b1)
+                  + " @@\n");
+            int pos = a0;
+            for (Hunk h : hunks.subList(first, last)) {
+                lines(out, ' ', oldText, starts[0], pos, h.a0);
+                lines(out, '-', oldText, starts[0], h.a0, h.a1);
+                lines(out, '+', newText, starts[1], h.b0, h.b1);
+                pos = h.a1;
+            }
+            lines(out, ' ', oldText, starts[0], pos, a1);
+        }
+    }
+
+    /** Writes to OUT that the versions of the file PATH differ, without
+     *  comparing them, as for files too large to diff. HASOLD and HASNEW
+     *  are false if the old or the new version is missing. */
+    static void differ(String path, boolean hasOld, boolean hasNew,
+                       OutputStream out) throws IOException {
+        header(path, hasOld, hasNew, out);
+        write(out, "Files " + (hasOld ? "a/" + path : NO_FILE) + " and "
+              + (hasNew ? "b/" + path : NO_FILE) + " differ\n");
+    }
+
+    /** Writes to OUT the lines a diff of the file PATH starts with.
+     *  HASOLD and HASNEW are false if the old or the new version is
+     *  missing. */
+    private static void header(String path, boolean hasOld, boolean hasNew,
+                               OutputStream out) throws IOException {
+        write(out, "diff --git a/" + path + " b/" + path + "\n");
+        if (!hasOld) {
+            write(out, "new file\n");
+        } else if (!hasNew) {
+            write(out, "deleted file\n");
+        }
+    }
+
+    /** Returns lines FROM up to TO as a unified diff gives them: the
+     *  number of the first and how many there are, or the number of the
+     *  line before if there are none, leaving out a count of one. */
+    private static String range(int from, int to) {
+        int n = to - from;
+        return (n == 0 ? from : from + 1) + (n == 1 ? "" : "," + n);
+    }
+
+    /** Writes lines FROM up to TO of TEXT, whose lines start at STARTS, to
+     *  OUT, each after MARK. A last line without a newline is followed by
+     *  one and a note saying so. */
+    private static void lines(OutputStream out, char mark, byte[] text,
+                              int[] starts, int from, int to)
+        throws IOException {
+        for (int k = from; k < to; k += 1) {
+            out.write(mark);
+            out.write(text, starts[k], starts[k + 1] - starts[k]);
+            if (text[starts[k + 1] - 1] != '\n') {
+                write(out, "\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Returns true iff TEXT has a zero byte, and so is not text. */
+    private static boolean binary(byte[] text) {
+        for (byte c : text) {
+            if (c == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes S to OUT in UTF-8. */
+    private static void write(OutputStream out, String s)
+        throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** A diff of the lines A and B. */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _changedA = new boolean[a.length];
+        _changedB = new boolean[b.length];
+        int max = -1;
+        for (int n : a) {
+            max = Math.max(max, n);
+        }
+        for (int n : b) {
+            max = Math.max(max, n);
+        }
+        _seen = new int[max + 1];
+    }
+
+    /** Marks the lines that differ between lines A0 to A1 of the first
+     *  text and lines B0 to B1 of the second. */
+    private void compare(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _a[a1 - 1] == _b[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+        }
+        if (a0 == a1 || b0 == b1 || !share(a0, a1, b0, b1)) {
+            Arrays.fill(_changedA, a0, a1, true);
+            Arrays.fill(_changedB, b0, b1, true);
+            return;
+        }
+        long split = middle(a0, a1, b0, b1);
+        int x = (int) (split >>> 32), y = (int) split;
+        if (split < 0 || (x == 0 && y == 0)
+                || (x == a1 - a0 && y == b1 - b0)) {
+            Arrays.fill(_changedA, a0, a1, true);
+            Arrays.fill(_changedB, b0, b1, true);
+            return;
+        }
+        compare(a0, a0 + x, b0, b0 + y);
+        compare(a0 + x, a1, b0 + y, b1);
+    }
+
+    /** Returns true iff some line of A0 to A1 of the first text is also
+     *  among lines B0 to B1 of the second. */
+    private boolean share(int a0, int a1, int b0, int b1) {
+        _stamp += 1;
+        for (int j = b0; j < b1; j += 1) {
+            _seen[_b[j]] = _stamp;
+        }
+        for (int i = a0; i < a1; i += 1) {
+            if (_seen[_a[i]] == _stamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns a point (X, Y) on a shortest edit from lines A0 to A1 of
+     *  the first text to lines B0 to B1 of the second, relative to their
+     *  starts, as X * 2^32 + Y, or -1 if they have no line in common.
+     *  The furthest points reached with each number of edits are followed
+     *  forward from the start and backward from the end, on diagonals
+     *  X - Y, until the two searches meet. If they have not met after
+     *  the cost limit, the point that has got furthest from its end is
+     *  returned instead. */
+    private long middle(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int maxD = (n + m + 1) / 2;
+        int maxCost = Math.max(MIN_COST, (int) Math.sqrt(n + m + 3));
+        long fBest = 0, bBest = ((long) n << 32) | m;
+        int fMost = 0, bMost = 0;
+        int offset = maxD + 1;
+        int[] fwd = new int[2 * offset + 2];
+        int[] bwd = new int[2 * offset + 2];
+        Arrays.fill(fwd, -1);
+        Arrays.fill(bwd, -1);
+        fwd[offset + 1] = 0;
+        bwd[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int fStart = 0, fEnd = 0, bStart = 0, bEnd = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            if (d > maxCost) {
+                return fMost >= bMost ? fBest : bBest;
+            }
+            for (int k = -d + fStart; k <= d - fEnd; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && fwd[i - 1] < fwd[i + 1])
+                    ? fwd[i + 1] : fwd[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && _a[a0 + x] == _b[b0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                fwd[i] = x;
+                if (x > n) {
+                    fEnd += 2;
+                } else if (y > m) {
+                    fStart += 2;
+                } else if (x + y > fMost) {
+                    fMost = x + y;
+                    fBest = ((long) x << 32) | y;
+                }
+                if (x <= n && y <= m && odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < bwd.length && bwd[j] != -1
+                            && x >= n - bwd[j]) {
+                        return ((long) x << 32) | y;
+                    }
+                }
+            }
+            for (int k = -d + bStart; k <= d - bEnd; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && bwd[i - 1] < bwd[i + 1])
+                    ? bwd[i + 1] : bwd[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m
+                       && _a[a1 - x - 1] == _b[b1 - y - 1]) {
+                    x += 1;
+                    y += 1;
+                }
+                bwd[i] = x;
+                if (x > n) {
+                    bEnd += 2;
+                } else if (y > m) {
+                    bStart += 2;
+                } else if (x + y > bMost) {
+                    bMost = x + y;
+                    bBest = ((long) (n - x) << 32) | (m - y);
+                }
+                if (x <= n && y <= m && !odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < fwd.length && fwd[j] != -1) {
+                        int fx = fwd[j];
+                        int fy = fx - (j - offset);
+                        if (fx >= n - x) {
+                            return ((long) fx << 32) | fy;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** A line of a text, compared by its bytes. */
+    private static final class Line {
+        /** The line that is bytes START to END of TEXT. */
+        Line(byte[] text, int start, int end) {
+            _text = text;
+            _start = start;
+            _end = end;
+            int h = 1;
+            for (int i = start; i < end; i += 1) {
+                h = 31 * h + text[i];
+            }
+            _hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return _hash == other._hash
+                && Arrays.equals(_text, _start, _end,
+                                 other._text, other._start, other._end);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** The text the line is in. */
+        private final byte[] _text;
+        /** Where the line starts in the text. */
+        private final int _start;
+        /** Where the line ends in the text. */
+        private final int _end;
+        /** Hash of the line's bytes. */
+        private final int _hash;
+    }
+
+    /** Lines of unchanged text shown around each change. */
+    static final int CONTEXT = 3;
+    /** Fewest edits searched for before middle may give up on a
+     *  shortest edit; larger texts may search up to the square root of
+     *  their combined length. */
+    private static final int MIN_COST = 256;
+    /** Name given to a missing version of a file. */
+    private static final String NO_FILE = "/dev/null";
+
+    /** Lines of the first text. */
+    private final int[] _a;
+    /** Lines of the second text. */
+    private final int[] _b;
+    /** Lines of the first text not in the second. */
+    private final boolean[] _changedA;
+    /** Lines of the second text not in the first. */
+    private final boolean[] _changedB;
+    /** For each line number, the last call of share to see it in the
+     *  second text. */
+    private final int[] _seen;
+    /** Number of calls of share so far. */
+    private int _stamp;
+}
@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/** A write-ahead journal that makes a set of small files change
+ *  together. The new contents of all of them are first written to the
+ *  journal, which is forced to disk once and renamed into place; only
+ *  then is each file replaced, by renaming a temporary file over it, so
+ *  no file is ever seen half written. Once the replacements are on disk
+ *  the journal is deleted. If a crash interrupts them, the journal is
+ *  still there, and recover finishes them on the next start. The
+ *  journal holds MAGIC, the number of files, each file's path, length
+ *  and contents, and then a CRC32 of all of that.
+ *  @author shivang singh
+ */
+class Journal {
+
+    /** A journal kept in FILE. */
+    Journal(File file) {
+        _file = file;
+    }
+
+    /** Durably records FILES, a map from each file to its new contents,
+     *  and then replaces the files with those contents. */
+    void commit(Map<File, byte[]> files) {
+        File tmp = new File(_file.getPath() + TMP_SUFFIX);
+        write(tmp, encode(files));
+        install(tmp, _file);
+        Utils.force(_file.getAbsoluteFile().getParentFile());
+        for (Map.Entry<File, byte[]> e : files.entrySet()) {
+            replace(e.getKey(), e.getValue());
+        }
+        finish(files.keySet());
+    }
+
+    /** Finishes the replacements recorded in the journal, if any file
+     *  does not hold what the journal says it should, and deletes it. A
+     *  journal that fails its checksum is deleted without being used.
+     *  Returns the number of files repaired. */
+    int recover() {
+        if (!_file.isFile()) {
+            return 0;
+        }
+        Map<File, byte[]> files = decode(Utils.readContents(_file));
+        if (files == null) {
+            _file.delete();
+            return 0;
+        }
+        int repaired = 0;
+        for (Map.Entry<File, byte[]> e : files.entrySet()) {
+            File f = e.getKey();
+            if (!f.isFile()
+                    || !Arrays.equals(Utils.readContents(f), e.getValue())) {
+                replace(f, e.getValue());
+                repaired += 1;
+            }
+        }
+        finish(files.keySet());
+        return repaired;
+    }
+
+    /** Forces the directories holding FILES, which have just been
+     *  replaced, to disk, and then deletes the journal, which is no
+     *  longer needed. */
+    private void finish(Collection<File> files) {
+        HashSet<File> dirs = new HashSet<>();
+        for (File f : files) {
+            dirs.add(f.getAbsoluteFile().getParentFile());
+        }
+        for (File dir : dirs) {
+            Utils.force(dir);
+        }
+        _file.delete();
+    }
+
+    /** Returns the journal recording FILES. */
+    private static byte[] encode(Map<File, byte[]> files) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(files.size());
+            for (Map.Entry<File, byte[]> e : files.entrySet()) {
+                byte[] path = e.getKey().getPath()
+                    .getBytes(StandardCharsets.UTF_8);
+                out.writeInt(path.length);
+                out.write(path);
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing journal.");
+        }
+    }
+
+    /** Returns the files recorded in the journal DATA, or null if it is
+     *  damaged. */
+    private static Map<File, byte[]> decode(byte[] data) {
+        if (data.length < 2 * Integer.BYTES + Long.BYTES) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - Long.BYTES);
+        ByteBuffer in = ByteBuffer.wrap(data);
+        if (in.getLong(data.length - Long.BYTES) != crc.getValue()
+                || in.getInt() != MAGIC) {
+            return null;
+        }
+        LinkedHashMap<File, byte[]> files = new LinkedHashMap<>();
+        for (int n = in.getInt(); n > 0; n -= 1) {
+            byte[] path = new byte[in.getInt()];
+            in.get(path);
+            byte[] contents = new byte[in.getInt()];
+            in.get(contents);
+            files.put(new File(new String(path, StandardCharsets.UTF_8)),
+                      contents);
+        }
+        return files;
+    }
+
+    /** Replaces FILE with one holding CONTENTS, by renaming a temporary
+     *  file, already forced to disk, over it. */
+    private static void replace(File file, byte[] contents) {
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        write(tmp, contents);
+        install(tmp, file);
+    }
+
+    /** Writes DATA to FILE, creating or overwriting it, and forces it to
+     *  disk. */
+    private static void write(File file, byte[] data) {
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            out.force(false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames TMP to FILE, replacing it. */
+    private static void install(File tmp, File file) {
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Leading word of a journal. */
+    private static final int MAGIC = 0x474a4e4c;
+    /** Suffix of the temporary files written before a rename. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** The journal file. */
+    private final File _file;
+}
@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+
+/** An exclusive lock on a file that other gitlet processes respect, held
+ *  by creating the file's name with ".lock" added, as Git does. Creating
+ *  it fails if it exists, so only one process at a time holds the lock;
+ *  closing the lock deletes the file. A lock is only taken around
+ *  updates: readers never take one, since every locked file is replaced
+ *  by renaming a new file over it or only ever has records appended.
+ *  The lock file holds the id of the process that made it.
+ *  @author shivang singh
+ */
+class LockFile implements AutoCloseable {
+
+    /** Returns the lock on FILE, waiting up to TIMEOUT milliseconds for
+     *  another process to release it. If it is not released in that
+     *  time, says so and ends the command. */
+    static LockFile acquire(File file) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        long wait = 1;
+        while (true) {
+            LockFile lock = tryAcquire(file);
+            if (lock != null) {
+                return lock;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                String msg = "Unable to lock " + lockName(file)
+                    + ": another gitlet process is using it. If none is"
+                    + " running, delete it.";
+                System.out.println(msg);
+                throw new GitletException(msg);
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException("interrupted");
+            }
+            wait = Math.min(2 * wait, MAX_WAIT);
+        }
+    }
+
+    /** Returns the lock on FILE, or null if another process holds it. */
+    static LockFile tryAcquire(File file) {
+        File lock = lockName(file);
+        try {
+            Files.writeString(Files.createFile(lock.toPath()),
+                    Long.toString(ProcessHandle.current().pid()));
+        } catch (FileAlreadyExistsException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return new LockFile(lock);
+    }
+
+    /** Checks, just before making the change this lock guards, that the
+     *  lock is still held. Someone told by acquire to delete a lock file
+     *  they took to be stale may have deleted this one, and another
+     *  process may since have taken the lock. If so, says so and ends
+     *  the command before anything is changed. */
+    void ensureHeld() {
+        if (!held()) {
+            String msg = "Lost the lock " + _lock + ": it was deleted while"
+                + " in use.";
+            System.out.println(msg);
+            throw new GitletException(msg);
+        }
+    }
+
+    /** Releases the lock, unless it has been lost: then the lock file,
+     *  if there is one, belongs to another process and is left alone. */
+    @Override
+    public void close() {
+        if (held()) {
+            _lock.delete();
+        }
+    }
+
+    /** Returns true iff the lock file exists and holds the id of this
+     *  process. */
+    private boolean held() {
+        try {
+            return Files.readString(_lock.toPath())
+                .equals(Long.toString(ProcessHandle.current().pid()));
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Returns the lock file of FILE. */
+    private static File lockName(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /** A lock held by having created the file LOCK. */
+    private LockFile(File lock) {
+        _lock = lock;
+    }
+
+    /** Suffix of the names of lock files. */
+    private static final String SUFFIX = ".lock";
+    /** Milliseconds acquire waits for a lock before giving up. */
+    private static final long TIMEOUT = 10000;
+    /** Longest pause in milliseconds between attempts to take a lock. */
+    private static final long MAX_WAIT = 50;
+
+    /** The lock file. */
+    private final File _lock;
+}
@@ -0,0 +1,92 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/** A bounded cache of immutable values keyed by object id. Each value
+ *  has a weight, roughly its size in bytes, and the least recently used
+ *  values are evicted to keep the total weight within a capacity. It
+ *  counts hits and misses, and is safe to share between threads.
+ *  @author shivang singh
+ */
+class LruCache<V> {
+
+    /** A cache holding at most CAPACITY total weight, where WEIGHER gives
+     *  the weight of a value. */
+    LruCache(long capacity, ToLongFunction<V> weigher) {
+        _capacity = capacity;
+        _weigher = weigher;
+    }
+
+    /** Returns the value cached for KEY, or null if there is none. */
+    synchronized V get(String key) {
+        V value = _entries.get(key);
+        if (value == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return value;
+    }
+
+    /** Caches VALUE for KEY, unless it alone outweighs the capacity. */
+    synchronized void put(String key, V value) {
+        long weight = _weigher.applyAsLong(value);
+        if (weight > _capacity) {
+            return;
+        }
+        V old = _entries.put(key, value);
+        if (old != null) {
+            _weight -= _weigher.applyAsLong(old);
+        }
+        _weight += weight;
+        Iterator<Map.Entry<String, V>> oldest =
+            _entries.entrySet().iterator();
+        while (_weight > _capacity) {
+            _weight -= _weigher.applyAsLong(oldest.next().getValue());
+            oldest.remove();
+        }
+    }
+
+    /** Returns the number of values cached. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Returns the total weight of the values cached. */
+    synchronized long weight() {
+        return _weight;
+    }
+
+    /** Returns the number of calls to get that found a value. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Returns the number of calls to get that found none. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, %d bytes, %d hits, %d misses",
+                _entries.size(), _weight, _hits, _misses);
+    }
+
+    /** Largest total weight held. */
+    private final long _capacity;
+    /** Gives the weight of a value. */
+    private final ToLongFunction<V> _weigher;
+    /** Cached values, least recently used first. */
+    private final LinkedHashMap<String, V> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Total weight of the cached values. */
+    private long _weight;
+    /** Number of successful lookups. */
+    private long _hits;
+    /** Number of failed lookups. */
+    private long _misses;
+}
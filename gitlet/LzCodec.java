@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A small LZ77 compressor in the style of LZ4. It gives up some ratio
+ *  against Deflate in exchange for decompression that is little more
+ *  than a sequence of array copies. Data is cut into blocks of
+ *  BLOCK_SIZE bytes, each written as its raw length, its compressed
+ *  length (or -1 if it did not shrink and is stored as is) and its
+ *  bytes. Within a block, each sequence is a token byte holding a
+ *  literal count and a match length, the literals, and a two-byte
+ *  offset back to the match.
+ *  @author shivang singh
+ */
+class LzCodec {
+
+    /** Returns a stream that compresses what is written to it onto OUT.
+     *  Closing it closes OUT. */
+    static OutputStream compress(OutputStream out) {
+        return new Compressor(out);
+    }
+
+    /** Returns a stream of the data compressed in IN. */
+    static InputStream decompress(InputStream in) {
+        return new Decompressor(in);
+    }
+
+    /** Compresses the first N bytes of SRC into DST, which must hold at
+     *  least maxCompressed(N) bytes, and returns the compressed length. */
+    static int compress(byte[] src, int n, byte[] dst) {
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0, out = 0;
+        int i = 0;
+        int limit = n - LAST_LITERALS;
+        while (i + MIN_MATCH <= limit) {
+            int seq = readInt(src, i);
+            int h = (seq * HASH_MULT) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                i += 1;
+                continue;
+            }
+            int len = MIN_MATCH;
+            while (i + len < limit && src[ref + len] == src[i + len]) {
+                len += 1;
+            }
+            out = sequence(src, anchor, i - anchor, i - ref, len, dst, out);
+            i += len;
+            anchor = i;
+        }
+        return sequence(src, anchor, n - anchor, 0, 0, dst, out);
+    }
+
+    /** Decompresses the N bytes of SRC into DST, returning the number of
+     *  bytes produced. */
+    static int decompress(byte[] src, int n, byte[] dst) {
+        int in = 0, out = 0;
+        while (in < n) {
+            int token = src[in++] & 0xff;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    b = src[in++] & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, in, dst, out, literals);
+            in += literals;
+            out += literals;
+            if (in >= n) {
+                break;
+            }
+            int offset = (src[in] & 0xff) | (src[in + 1] & 0xff) << 8;
+            in += 2;
+            int len = token & 15;
+            if (len == 15) {
+                int b;
+                do {
+                    b = src[in++] & 0xff;
+                    len += b;
+                } while (b == 255);
+            }
+            len += MIN_MATCH;
+            for (int from = out - offset; len > 0; len -= 1) {
+                dst[out++] = dst[from++];
+            }
+        }
+        return out;
+    }
+
+    /** Returns the most bytes that compressing N bytes can produce. */
+    static int maxCompressed(int n) {
+        return n + n / 255 + 16;
+    }
+
+    /** Appends to DST at OUT a sequence of the COUNT literals at SRC[FROM]
+     *  followed, if LEN is not 0, by a match of LEN bytes OFFSET back.
+     *  Returns the new end of DST. */
+    private static int sequence(byte[] src, int from, int count, int offset,
+                                int len, byte[] dst, int out) {
+        int matchCode = len == 0 ? 0 : len - MIN_MATCH;
+        int token = out;
+        dst[out++] = (byte) ((Math.min(count, 15) << 4)
+                | Math.min(matchCode, 15));
+        if (count >= 15) {
+            out = length(count - 15, dst, out);
+        }
+        System.arraycopy(src, from, dst, out, count);
+        out += count;
+        if (len != 0) {
+            dst[out++] = (byte) offset;
+            dst[out++] = (byte) (offset >>> 8);
+            if (matchCode >= 15) {
+                out = length(matchCode - 15, dst, out);
+            }
+        }
+        return out;
+    }
+
+    /** Appends the extension bytes for length REST to DST at OUT and
+     *  returns the new end of DST. */
+    private static int length(int rest, byte[] dst, int out) {
+        while (rest >= 255) {
+            dst[out++] = (byte) 255;
+            rest -= 255;
+        }
+        dst[out++] = (byte) rest;
+        return out;
+    }
+
+    /** Returns the little-endian int at SRC[I]. */
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xff) | (src[i + 1] & 0xff) << 8
+                | (src[i + 2] & 0xff) << 16 | (src[i + 3] & 0xff) << 24;
+    }
+
+    /** A stream that compresses a block at a time. */
+    private static class Compressor extends FilterOutputStream {
+        /** A compressor writing onto OUT. */
+        Compressor(OutputStream out) {
+            super(new DataOutputStream(out));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_size == _block.length) {
+                flushBlock();
+            }
+            _block[_size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_size == _block.length) {
+                    flushBlock();
+                }
+                int n = Math.min(len, _block.length - _size);
+                System.arraycopy(b, off, _block, _size, n);
+                _size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushBlock();
+            super.close();
+        }
+
+        /** Writes out the buffered block, if any. */
+        private void flushBlock() throws IOException {
+            if (_size == 0) {
+                return;
+            }
+            DataOutputStream data = (DataOutputStream) out;
+            int n = compress(_block, _size, _packed);
+            data.writeInt(_size);
+            if (n < _size) {
+                data.writeInt(n);
+                data.write(_packed, 0, n);
+            } else {
+                data.writeInt(-1);
+                data.write(_block, 0, _size);
+            }
+            _size = 0;
+        }
+
+        /** Bytes not yet compressed. */
+        private final byte[] _block = new byte[BLOCK_SIZE];
+        /** Number of bytes in _block. */
+        private int _size;
+        /** Space for one compressed block. */
+        private final byte[] _packed = new byte[maxCompressed(BLOCK_SIZE)];
+    }
+
+    /** A stream that decompresses a block at a time. */
+    private static class Decompressor extends FilterInputStream {
+        /** A decompressor reading from IN. */
+        Decompressor(InputStream in) {
+            super(new DataInputStream(in));
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return _block[_pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, _size - _pos);
+            System.arraycopy(_block, _pos, b, off, n);
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && fill()) {
+                int k = (int) Math.min(n - skipped, _size - _pos);
+                _pos += k;
+                skipped += k;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return _size - _pos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /** Makes sure there are unread bytes in _block, returning false
+         *  at end of stream. */
+        private boolean fill() throws IOException {
+            if (_pos < _size) {
+                return true;
+            }
+            DataInputStream data = (DataInputStream) in;
+            int raw;
+            try {
+                raw = data.readInt();
+            } catch (EOFException excp) {
+                return false;
+            }
+            int n = data.readInt();
+            if (n < 0) {
+                data.readFully(_block, 0, raw);
+            } else {
+                data.readFully(_packed, 0, n);
+                decompress(_packed, n, _block);
+            }
+            _size = raw;
+            _pos = 0;
+            return true;
+        }
+
+        /** The current decompressed block. */
+        private final byte[] _block = new byte[BLOCK_SIZE];
+        /** Number of bytes in _block. */
+        private int _size;
+        /** Position of the next unread byte of _block. */
+        private int _pos;
+        /** Space for one compressed block. */
+        private final byte[] _packed = new byte[maxCompressed(BLOCK_SIZE)];
+    }
+
+    /** Uncompressed size of a block. */
+    static final int BLOCK_SIZE = 1 << 16;
+    /** Shortest match worth encoding. */
+    private static final int MIN_MATCH = 4;
+    /** Bytes at the end of a block that are always literals. */
+    private static final int LAST_LITERALS = 5;
+    /** Farthest distance back a match may be. */
+    private static final int MAX_OFFSET = 65535;
+    /** Log of the size of the match-finding hash table. */
+    private static final int HASH_BITS = 13;
+    /** Multiplier used to hash four bytes. */
+    private static final int HASH_MULT = -1640531535;
+}
@@ -0,0 +1,398 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/** Driver class for Gitlet, the tiny stupid version-control system.
+ *  A command is sent to a running Daemon if there is one, and is
+ *  otherwise run directly. "batch" runs many commands read from a file
+ *  or the standard input against one Repository.
+ *  @author shivang singh
+ */
+public class Main {
+
+    /** Usage: java gitlet.Main ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> ....
+     *  @param args command and its operands
+     */
+    public static void main(String... args) {
+        if (args.length == 0) {
+            System.out.println("Please enter a command.");
+            System.exit(0);
+        }
+        if (args[0].equals("daemon") && args.length == 1) {
+            Daemon.serve();
+            System.exit(0);
+        }
+        if (args[0].equals("batch") && args.length <= 2) {
+            try {
+                batch(args.length == 2 ? args[1] : null);
+            } catch (GitletException excp) {
+                System.exit(0);
+            }
+            System.exit(0);
+        }
+        int status = Daemon.forward(args);
+        if (status == Daemon.NOT_RUNNING) {
+            status = 0;
+            try {
+                run(Repository.GITLET.isDirectory() ? new Repository()
+                        : null, args);
+            } catch (GitletException excp) {
+                System.exit(0);
+            }
+        }
+        System.exit(status);
+    }
+
+    /** Runs the command ARGS against REPO, which is null if there is no
+     *  repository here. Errors in the use of a command are reported on
+     *  the standard output and end the command with a GitletException.
+     *  @param repo the repository
+     *  @param args command and its operands
+     */
+    static void run(Repository repo, String... args) {
+        String cmd = args[0];
+        if (!COMMANDS.contains(" " + cmd + " ")) {
+            fail("No command with that name exists.");
+        }
+        if (repo == null && !cmd.equals("init")) {
+            fail("Not in an initialized Gitlet directory.");
+        }
+        if (repo == null) {
+            repo = new Repository();
+        }
+        try {
+            dispatch(repo, args);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            repo.unlock();
+        }
+    }
+
+    /** Runs the commands in the file named NAME, or on the standard
+     *  input if NAME is null, one to a line, against one Repository.
+     *  The branches and the staging area are written once, after the
+     *  last command. A command that fails reports its error, any change
+     *  it made to the branches or the staging area is undone, and the
+     *  rest still run. A command that dies of any other exception is
+     *  undone the same way but ends the batch, and only the changes of
+     *  the commands before it are written. Blank lines and lines
+     *  starting with # are skipped; see split for how a line is divided
+     *  into words.
+     *  @param name the file of commands, or null
+     */
+    private static void batch(String name) {
+        if (!Repository.GITLET.isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Repository repo = new Repository();
+        repo.defer();
+        try (BufferedReader in = new BufferedReader(name == null
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : new FileReader(name, StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String[] cmd = split(line);
+                if (cmd.length == 0 || cmd[0].startsWith("#")) {
+                    continue;
+                }
+                repo.checkpoint();
+                try {
+                    run(repo, cmd);
+                } catch (GitletException excp) {
+                    repo.rollback();
+                } catch (RuntimeException | Error excp) {
+                    repo.rollback();
+                    throw excp;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            repo.flush();
+        }
+    }
+
+    /** Returns the words of LINE, which are separated by white space.
+     *  Text in double quotes is part of one word, white space and all,
+     *  and within quotes a backslash makes the next character literal,
+     *  so that commit "fix \"log\" output" has two words.
+     *  @param line the line
+     *  @return its words
+     */
+    static String[] split(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (!quoted && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted && c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+            } else {
+                word.append(c);
+            }
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /** Runs the command ARGS against REPO.
+     *  @param repo the repository
+     *  @param args command and its operands
+     *  @throws IOException
+     */
+    private static void dispatch(Repository repo, String... args)
+        throws IOException {
+        switch (args[0]) {
+        case "init":
+            operands(args, 0);
+            repo.initialize();
+            break;
+        case "add":
+            operands(args, 1);
+            repo.add(args[1]);
+            break;
+        case "commit":
+            operands(args, 1);
+            repo.commit(args[1], new SimpleDateFormat(DATE_FORMAT)
+                    .format(new Date()));
+            break;
+        case "rm":
+            operands(args, 1);
+            repo.remove(args[1]);
+            break;
+        case "log":
+        case "global-log":
+            log(repo, args);
+            break;
+        case "find":
+            find(repo, args);
+            break;
+        case "status":
+            operands(args, 0);
+            repo.status();
+            break;
+        case "diff":
+            diff(repo, args);
+            break;
+        case "checkout":
+            checkout(repo, args);
+            break;
+        case "branch":
+            operands(args, 1);
+            repo.branch(args[1]);
+            break;
+        case "rm-branch":
+            operands(args, 1);
+            repo.rmBranch(args[1]);
+            break;
+        case "reset":
+            operands(args, 1);
+            repo.reset(args[1]);
+            break;
+        case "merge":
+            merge(repo, args);
+            break;
+        case "repack":
+            operands(args, 0);
+            repo.repack();
+            break;
+        case "gc":
+            gc(repo, args);
+            break;
+        default:
+            fail("No command with that name exists.");
+        }
+    }
+
+    /** Runs one of the three forms of checkout in ARGS against REPO.
+     *  @param repo the repository
+     *  @param args command and its operands
+     *  @throws IOException
+     */
+    private static void checkout(Repository repo, String... args)
+        throws IOException {
+        if (args.length == 3 && args[1].equals("--")) {
+            repo.checkout(args[2]);
+        } else if (args.length == 4 && args[2].equals("--")) {
+            repo.checkout(args[1], args[3]);
+        } else if (args.length == 2) {
+            repo.checkout(args[1], 0);
+        } else {
+            fail("Incorrect operands.");
+        }
+    }
+
+    /** Runs log or global-log in ARGS against REPO, with the options
+     *  --skip=N, which leaves out the first N commits, and --max-count=N,
+     *  which shows at most N.
+     *  @param repo the repository
+     *  @param args command and its operands
+     */
+    private static void log(Repository repo, String... args) {
+        int skip = 0, max = -1;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].startsWith(SKIP)) {
+                skip = count(args[i].substring(SKIP.length()));
+            } else if (args[i].startsWith(MAX_COUNT)) {
+                max = count(args[i].substring(MAX_COUNT.length()));
+            } else {
+                fail("Incorrect operands.");
+            }
+        }
+        if (args[0].equals("log")) {
+            repo.log(skip, max);
+        } else {
+            repo.globalLog(skip, max);
+        }
+    }
+
+    /** Returns the count written as NUM, which must not be negative.
+     *  @param num the count as text
+     *  @return the count
+     */
+    private static int count(String num) {
+        int n;
+        try {
+            n = Integer.parseInt(num);
+        } catch (NumberFormatException excp) {
+            n = -1;
+        }
+        if (n < 0) {
+            fail("Incorrect operands.");
+        }
+        return n;
+    }
+
+    /** Runs gc in ARGS against REPO, keeping unreachable objects for
+     *  GRACE_DAYS days, or with --prune=N for N days; --prune=now sweeps
+     *  them whatever their age, which is only safe when no other command
+     *  is running.
+     *  @param repo the repository
+     *  @param args command and its operands
+     */
+    private static void gc(Repository repo, String... args) {
+        long days = GRACE_DAYS;
+        if (args.length == 2 && args[1].equals(PRUNE + "now")) {
+            days = 0;
+        } else if (args.length == 2 && args[1].startsWith(PRUNE)) {
+            days = count(args[1].substring(PRUNE.length()));
+        } else if (args.length != 1) {
+            fail("Incorrect operands.");
+        }
+        repo.gc(TimeUnit.DAYS.toMillis(days));
+    }
+
+    /** Runs find in ARGS against REPO: by whole message, or with
+     *  --prefix or --grep by the start of or any part of the message.
+     *  @param repo the repository
+     *  @param args command and its operands
+     */
+    private static void find(Repository repo, String... args) {
+        if (args.length == 2) {
+            repo.findCWMsg(args[1]);
+        } else if (args.length == 3 && args[1].equals("--prefix")) {
+            repo.findPrefix(args[2]);
+        } else if (args.length == 3 && args[1].equals("--grep")) {
+            repo.findContaining(args[2]);
+        } else {
+            fail("Incorrect operands.");
+        }
+    }
+
+    /** Runs diff in ARGS against REPO: of up to two commits or branches,
+     *  or with --cached of the staging area against up to one.
+     *  @param repo the repository
+     *  @param args command and its operands
+     */
+    private static void diff(Repository repo, String... args) {
+        boolean cached = args.length > 1 && args[1].equals("--cached");
+        String[] revs = Arrays.copyOfRange(args, cached ? 2 : 1,
+                                           args.length);
+        if (revs.length > (cached ? 1 : 2)) {
+            fail("Incorrect operands.");
+        }
+        repo.diff(cached, revs);
+    }
+
+    /** Runs merge in ARGS against REPO: into the working tree, or with
+     *  --in-memory in the object store alone.
+     *  @param repo the repository
+     *  @param args command and its operands
+     *  @throws IOException
+     */
+    private static void merge(Repository repo, String... args)
+        throws IOException {
+        if (args.length == 2) {
+            repo.merge(args[1]);
+        } else if (args.length == 3 && args[1].equals("--in-memory")) {
+            repo.mergeInMemory(args[2]);
+        } else {
+            fail("Incorrect operands.");
+        }
+    }
+
+    /** Checks that ARGS holds a command and N operands.
+     *  @param args command and its operands
+     *  @param n number of operands
+     */
+    private static void operands(String[] args, int n) {
+        if (args.length != n + 1) {
+            fail("Incorrect operands.");
+        }
+    }
+
+    /** Reports MSG and ends the command.
+     *  @param msg the message
+     */
+    private static void fail(String msg) {
+        System.out.println(msg);
+        throw new GitletException(msg);
+    }
+
+    /** The commands there are, each surrounded by spaces. */
+    private static final String COMMANDS = " init add commit rm log "
+        + "global-log find status diff checkout branch rm-branch reset merge "
+        + "repack gc ";
+
+    /** Option of log giving the number of commits to leave out. */
+    private static final String SKIP = "--skip=";
+
+    /** Option of log giving the largest number of commits to show. */
+    private static final String MAX_COUNT = "--max-count=";
+
+    /** Option of gc giving the days unreachable objects are kept. */
+    private static final String PRUNE = "--prune=";
+
+    /** Days gc keeps unreachable objects for by default. */
+    private static final long GRACE_DAYS = 14;
+
+    /** Format of commit timestamps. */
+    static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
+}
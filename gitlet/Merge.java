@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A three-way merge of texts, line by line, in the manner of diff3.
+ *  Both versions are diffed against the version they were made from,
+ *  and the hunks of the two diffs are taken in order of where they
+ *  start in that version. Hunks that overlap or touch are grouped. A
+ *  group changed by only one side, or changed the same way by both,
+ *  is merged cleanly; otherwise only that group is written as a
+ *  conflict, between markers, and the rest of the file is merged.
+ *  @author shivang singh
+ */
+class Merge {
+
+    /** What merging a branch does to one file. A file left out of a plan
+     *  keeps the current branch's version: the given branch left it as it
+     *  was at the split point, or both branches made the same change. */
+    enum Action {
+        /** Take the given branch's version; only that branch changed it. */
+        TAKE_THEIRS,
+        /** Remove the file; only the given branch removed it. */
+        DELETE,
+        /** Merge the two branches' versions line by line. */
+        MERGE,
+        /** One branch changed the file and the other removed it. */
+        CONFLICT
+    }
+
+    /** Returns what merging the files THEIRS into the files OURS, both
+     *  made from the files BASE, does to each file it changes, by path.
+     *  Each map is from path to blob UID. */
+    static TreeMap<String, Action> plan(Map<String, String> base,
+                                        Map<String, String> ours,
+                                        Map<String, String> theirs) {
+        TreeSet<String> paths = new TreeSet<>(base.keySet());
+        paths.addAll(ours.keySet());
+        paths.addAll(theirs.keySet());
+        TreeMap<String, Action> plan = new TreeMap<>();
+        for (String path : paths) {
+            Action action = action(base.get(path), ours.get(path),
+                                   theirs.get(path));
+            if (action != null) {
+                plan.put(path, action);
+            }
+        }
+        return plan;
+    }
+
+    /** Returns what is done to a file whose blob is B at the split point,
+     *  O in the current branch and T in the given one, or null if the
+     *  current branch's version is kept. A blob is null where the file
+     *  is missing. */
+    private static Action action(String b, String o, String t) {
+        if (Objects.equals(o, t) || Objects.equals(b, t)) {
+            return null;
+        } else if (Objects.equals(b, o)) {
+            return t == null ? Action.DELETE : Action.TAKE_THEIRS;
+        } else if (o == null || t == null) {
+            return Action.CONFLICT;
+        } else {
+            return Action.MERGE;
+        }
+    }
+
+    /** Writes to OUT the merge of OURS and THEIRS, which were both made
+     *  from BASE. Returns true iff some part of it is a conflict. */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        byte[][] texts = { base, ours, theirs };
+        int[][] starts = new int[3][];
+        for (int t = 0; t < 3; t += 1) {
+            starts[t] = Diff.lineStarts(texts[t]);
+        }
+        int[][] lines = Diff.number(texts, starts);
+        List<List<Diff.Hunk>> hunks = List.of(Diff.diff(lines[0], lines[1]),
+                                              Diff.diff(lines[0], lines[2]));
+        int[] deltas = new int[2];
+        int[] next = new int[2];
+        int pos = 0;
+        boolean conflict = false;
+        while (next[0] < hunks.get(0).size()
+               || next[1] < hunks.get(1).size()) {
+            int g0 = Math.min(start(hunks.get(0), next[0]),
+                              start(hunks.get(1), next[1]));
+            int g1 = g0;
+            int[] first = next.clone();
+            for (boolean grew = true; grew;) {
+                grew = false;
+                for (int side = 0; side < 2; side += 1) {
+                    if (start(hunks.get(side), next[side]) <= g1) {
+                        g1 = Math.max(g1, hunks.get(side).get(next[side]).a1);
+                        next[side] += 1;
+                        grew = true;
+                    }
+                }
+            }
+            copy(out, texts[0], starts[0], pos, g0);
+            int o0 = g0 + deltas[0], t0 = g0 + deltas[1];
+            for (int side = 0; side < 2; side += 1) {
+                deltas[side] = shift(hunks.get(side), first[side], next[side],
+                                     deltas[side]);
+            }
+            int o1 = g1 + deltas[0], t1 = g1 + deltas[1];
+            boolean changedOurs = next[0] > first[0];
+            boolean changedTheirs = next[1] > first[1];
+            if (!changedTheirs) {
+                copy(out, texts[1], starts[1], o0, o1);
+            } else if (!changedOurs
+                       || same(lines[1], o0, o1, lines[2], t0, t1)) {
+                copy(out, texts[2], starts[2], t0, t1);
+            } else {
+                out.write(OURS_MARKER);
+                copy(out, texts[1], starts[1], o0, o1);
+                endLine(out, texts[1], starts[1][o0], starts[1][o1]);
+                out.write(SEPARATOR);
+                copy(out, texts[2], starts[2], t0, t1);
+                endLine(out, texts[2], starts[2][t0], starts[2][t1]);
+                out.write(THEIRS_MARKER);
+                conflict = true;
+            }
+            pos = g1;
+        }
+        copy(out, texts[0], starts[0], pos, starts[0].length - 1);
+        return conflict;
+    }
+
+    /** Writes to OUT the whole of OURS and THEIRS as one conflict, as when
+     *  one side changed a file and the other removed it. */
+    static void conflict(byte[] ours, byte[] theirs, OutputStream out)
+        throws IOException {
+        out.write(OURS_MARKER);
+        out.write(ours);
+        endLine(out, ours, 0, ours.length);
+        out.write(SEPARATOR);
+        out.write(theirs);
+        endLine(out, theirs, 0, theirs.length);
+        out.write(THEIRS_MARKER);
+    }
+
+    /** Writes a newline to OUT if bytes FROM up to TO of TEXT, just
+     *  written, end without one, so that the marker after them starts a
+     *  line of its own. */
+    private static void endLine(OutputStream out, byte[] text, int from,
+                                int to) throws IOException {
+        if (to > from && text[to - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+
+    /** Returns the first line of the base changed by hunk K of HUNKS, or
+     *  the largest int if there is no such hunk. A hunk starting where a
+     *  group ends touches it and joins it. */
+    private static int start(List<Diff.Hunk> hunks, int k) {
+        return k < hunks.size() ? hunks.get(k).a0 : Integer.MAX_VALUE;
+    }
+
+    /** Returns DELTA, the difference between a line's number in one side
+     *  and in the base just before hunk FROM of HUNKS, updated for hunks
+     *  up to TO. */
+    private static int shift(List<Diff.Hunk> hunks, int from, int to,
+                             int delta) {
+        for (int k = from; k < to; k += 1) {
+            Diff.Hunk h = hunks.get(k);
+            delta += (h.b1 - h.b0) - (h.a1 - h.a0);
+        }
+        return delta;
+    }
+
+    /** Returns true iff lines A0 to A1 of A are lines B0 to B1 of B. */
+    private static boolean same(int[] a, int a0, int a1,
+                                int[] b, int b0, int b1) {
+        if (a1 - a0 != b1 - b0) {
+            return false;
+        }
+        for (int k = 0; k < a1 - a0; k += 1) {
+            if (a[a0 + k] != b[b0 + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Writes lines FROM up to TO of TEXT, whose lines start at STARTS,
+     *  to OUT. */
+    private static void copy(OutputStream out, byte[] text, int[] starts,
+                             int from, int to) throws IOException {
+        out.write(text, starts[from], starts[to] - starts[from]);
+    }
+
+    /** Marks the start of a conflict and of the current branch's lines. */
+    private static final byte[] OURS_MARKER =
+        "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    /** Separates the two sides of a conflict. */
+    private static final byte[] SEPARATOR =
+        "=======\n".getBytes(StandardCharsets.UTF_8);
+    /** Marks the end of a conflict. */
+    private static final byte[] THEIRS_MARKER =
+        ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+}
@@ -0,0 +1,718 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/** A persistent index from commit messages to the commits that have
+ *  them, so that find need not read every commit. It is kept in two
+ *  files. The log, FILE, holds MAGIC and then one record per commit, in
+ *  the order they were added: its UID, the length of its message in
+ *  UTF-8 and the message. Records are only ever appended to it. The
+ *  sorted index, FILE.idx, covers the log up to some record: it holds
+ *  the messages of the records covered, in order, each with the UIDs of
+ *  its commits, and every word of those messages, in order, each with
+ *  the messages containing it. It is mapped, and a lookup bisects it and
+ *  reads only the entries it needs. The records after those covered are
+ *  read into memory and indexed the same way there. Once they make up
+ *  more than an eighth of the log, the sorted index is written afresh
+ *  to cover them too, so an append stays cheap and the part of the log
+ *  read whole stays small.
+ *  @author shivang singh
+ */
+class MessageIndex {
+
+    /** The message index stored in FILE, read on first use. */
+    MessageIndex(File file) {
+        _file = file;
+        _sortedFile = new File(file.getPath() + SORTED_SUFFIX);
+    }
+
+    /** Forgets what has been read, so that the files are read again. */
+    void invalidate() {
+        _loaded = false;
+        _length = 0;
+        _covered = 0;
+        _sorted = null;
+        _ids.clear();
+        _messages.clear();
+        _words.clear();
+    }
+
+    /** Returns true iff the index file exists. */
+    boolean exists() {
+        return _file.isFile();
+    }
+
+    /** Writes a new index of the commits IDS, whose messages are given
+     *  by MESSAGE. */
+    void rebuild(Collection<String> ids, Function<String, String> message) {
+        try (LockFile lock = LockFile.acquire(_file)) {
+            invalidate();
+            if (!_file.isFile()) {
+                LinkedHashMap<String, String> records = new LinkedHashMap<>();
+                for (String id : ids) {
+                    records.put(id, message.apply(id));
+                }
+                lock.ensureHeld();
+                write(records);
+            }
+        }
+    }
+
+    /** Writes the log afresh with RECORDS, the message of each commit by
+     *  UID in the order of their records, and then a sorted index
+     *  covering all of it. Only called with the lock held. */
+    private void write(Map<String, String> records) {
+        File tmp = new File(_file.getPath() + ".tmp");
+        ArrayList<LogRecord> written = new ArrayList<>();
+        try (DataOutputStream out = open(tmp, false)) {
+            out.writeInt(MAGIC);
+            long offset = HEADER_BYTES;
+            for (Map.Entry<String, String> e : records.entrySet()) {
+                LogRecord r = new LogRecord(offset, e.getKey(),
+                                            e.getValue());
+                write(out, r.id, r.msg);
+                written.add(r);
+                offset = r.end;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        move(tmp, _file);
+        writeSorted(written);
+    }
+
+    /** Drops the commits GONE from the index, writing the log afresh
+     *  under the lock if any of them are in it. */
+    void remove(Set<String> gone) {
+        try (LockFile lock = LockFile.acquire(_file)) {
+            invalidate();
+            if (!_file.isFile()) {
+                return;
+            }
+            LinkedHashMap<String, String> kept = new LinkedHashMap<>();
+            boolean changed = false;
+            for (LogRecord r : read(HEADER_BYTES)) {
+                if (gone.contains(r.id)) {
+                    changed = true;
+                } else {
+                    kept.putIfAbsent(r.id, r.msg);
+                }
+            }
+            if (changed) {
+                lock.ensureHeld();
+                write(kept);
+            }
+        }
+    }
+
+    /** Records that commit ID has message MSG, unless it is among the
+     *  records not yet covered by the sorted index. Records are appended
+     *  under a lock, after reading any that another process has appended;
+     *  only the records the sorted index does not cover are read. A
+     *  commit added again after the sorted index covers it is recorded
+     *  twice, which lookups, returning each UID once, do not show. */
+    void add(String id, String msg) {
+        try (LockFile lock = LockFile.acquire(_file)) {
+            if (_file.length() != _length) {
+                invalidate();
+            }
+            load();
+            if (_ids.contains(id)) {
+                return;
+            }
+            lock.ensureHeld();
+            truncate();
+            try (DataOutputStream out = open(_file, true)) {
+                if (_file.length() == 0) {
+                    out.writeInt(MAGIC);
+                    _covered = HEADER_BYTES;
+                }
+                write(out, id, msg);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            _length = _file.length();
+            put(id, msg);
+            if (_length - _covered
+                    > Math.max(TAIL_MIN, _length / TAIL_SHARE)) {
+                writeSorted(read(HEADER_BYTES));
+                invalidate();
+            }
+        }
+    }
+
+    /** Returns the UIDs of the commits whose message is MSG, in order. */
+    List<String> exact(String msg) {
+        load();
+        TreeSet<String> result = new TreeSet<>();
+        if (_sorted != null) {
+            int k = lowerBound(messageCount(), this::message, msg);
+            if (k < messageCount() && message(k).equals(msg)) {
+                commits(k, result);
+            }
+        }
+        TreeSet<String> ids = _messages.get(msg);
+        if (ids != null) {
+            result.addAll(ids);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the UIDs of the commits whose message begins with PREFIX,
+     *  in order. */
+    List<String> prefix(String prefix) {
+        load();
+        TreeSet<String> result = new TreeSet<>();
+        if (_sorted != null) {
+            for (int k = lowerBound(messageCount(), this::message, prefix);
+                 k < messageCount() && message(k).startsWith(prefix);
+                 k += 1) {
+                commits(k, result);
+            }
+        }
+        for (Map.Entry<String, TreeSet<String>> e
+                 : _messages.tailMap(prefix).entrySet()) {
+            if (!e.getKey().startsWith(prefix)) {
+                break;
+            }
+            result.addAll(e.getValue());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the UIDs of the commits whose message contains TEXT, in
+     *  order. A word of TEXT with other characters on both sides must be
+     *  a whole word of the message, so only the messages with the rarest
+     *  such word are checked. If TEXT has no such word, the messages
+     *  checked are those with a word containing its longest piece. */
+    List<String> containing(String text) {
+        load();
+        String[] pieces = words(text);
+        TreeSet<String> result = new TreeSet<>();
+        if (_sorted != null) {
+            for (int k : sortedCandidates(pieces)) {
+                if (message(k).contains(text)) {
+                    commits(k, result);
+                }
+            }
+        }
+        for (String msg : candidates(pieces)) {
+            if (msg.contains(text)) {
+                result.addAll(_messages.get(msg));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the messages read into memory that may contain the text
+     *  whose words are PIECES, as containing chooses them. */
+    private Collection<String> candidates(String[] pieces) {
+        Collection<String> result = null;
+        for (int i = 1; i < pieces.length - 1; i += 1) {
+            HashSet<String> msgs = _words.get(pieces[i]);
+            if (msgs == null) {
+                return new ArrayList<>();
+            }
+            if (result == null || msgs.size() < result.size()) {
+                result = msgs;
+            }
+        }
+        if (result != null) {
+            return result;
+        }
+        String longest = longest(pieces);
+        if (longest.isEmpty()) {
+            return _messages.keySet();
+        }
+        result = new HashSet<>();
+        for (Map.Entry<String, HashSet<String>> e : _words.entrySet()) {
+            if (e.getKey().contains(longest)) {
+                result.addAll(e.getValue());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the positions in the sorted index of the messages that
+     *  may contain the text whose words are PIECES, as containing
+     *  chooses them. */
+    private Collection<Integer> sortedCandidates(String[] pieces) {
+        int best = -1;
+        for (int i = 1; i < pieces.length - 1; i += 1) {
+            int w = lowerBound(wordCount(), this::word, pieces[i]);
+            if (w == wordCount() || !word(w).equals(pieces[i])) {
+                return new ArrayList<>();
+            }
+            if (best < 0 || postings(w).size() < postings(best).size()) {
+                best = w;
+            }
+        }
+        if (best >= 0) {
+            return postings(best);
+        }
+        String longest = longest(pieces);
+        TreeSet<Integer> result = new TreeSet<>();
+        if (longest.isEmpty()) {
+            for (int k = 0; k < messageCount(); k += 1) {
+                result.add(k);
+            }
+            return result;
+        }
+        for (int w = 0; w < wordCount(); w += 1) {
+            if (word(w).contains(longest)) {
+                result.addAll(postings(w));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the longest of PIECES. */
+    private static String longest(String[] pieces) {
+        String result = "";
+        for (String piece : pieces) {
+            if (piece.length() > result.length()) {
+                result = piece;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the words of TEXT: its runs of letters and digits, in
+     *  order. A run at either end of TEXT may be part of a longer word of
+     *  a message that contains TEXT. */
+    static String[] words(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i += 1) {
+            boolean inWord = i < text.length()
+                && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                result.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        if (!text.isEmpty()
+                && !Character.isLetterOrDigit(text.charAt(0))) {
+            result.add(0, "");
+        }
+        if (!text.isEmpty()
+                && !Character.isLetterOrDigit(text.charAt(text.length() - 1))) {
+            result.add("");
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /** Maps the sorted index and reads the records of the log it does
+     *  not cover, if that has not been done. A partial record at the
+     *  end, left by an append that was interrupted or is still being
+     *  written, is ignored. */
+    private void load() {
+        if (_loaded) {
+            return;
+        }
+        _loaded = true;
+        if (!_file.isFile()) {
+            return;
+        }
+        _sorted = mapSorted();
+        _covered = _sorted == null ? HEADER_BYTES : _sorted.getLong(COVERED);
+        List<LogRecord> tail = read(_covered);
+        for (LogRecord r : tail) {
+            put(r.id, r.msg);
+        }
+        _length = tail.isEmpty() ? _covered : tail.get(tail.size() - 1).end;
+    }
+
+    /** Returns the whole records of the log from offset FROM on, in
+     *  order, leaving out a partial record at the end. */
+    private List<LogRecord> read(long from) {
+        ArrayList<LogRecord> result = new ArrayList<>();
+        ByteBuffer data;
+        try (FileChannel in = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer head = readAt(in, 0, HEADER_BYTES);
+            if (head.remaining() < HEADER_BYTES || head.getInt() != MAGIC) {
+                throw new IllegalArgumentException("bad message index");
+            }
+            data = readAt(in, from, (int) Math.max(0, in.size() - from));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] raw = new byte[UID_BYTES];
+        while (data.remaining() >= UID_BYTES + 4) {
+            long offset = from + data.position();
+            data.get(raw);
+            int n = data.getInt();
+            if (n < 0 || data.remaining() < n) {
+                break;
+            }
+            byte[] msg = new byte[n];
+            data.get(msg);
+            result.add(new LogRecord(offset, Utils.toHex(raw),
+                                     new String(msg, StandardCharsets.UTF_8)));
+        }
+        return result;
+    }
+
+    /** Returns up to N bytes of IN from POSITION on, fewer if it ends
+     *  first. */
+    private static ByteBuffer readAt(FileChannel in, long position, int n)
+        throws IOException {
+        ByteBuffer result = ByteBuffer.allocate(n);
+        while (result.hasRemaining()) {
+            if (in.read(result, position + result.position()) < 0) {
+                break;
+            }
+        }
+        return result.flip();
+    }
+
+    /** Returns the sorted index, mapped, or null if it is missing or
+     *  does not match the start of the log, as when the log has been
+     *  written afresh and the index not yet. It matches if the record
+     *  it was written up to is still where it was. The index is never
+     *  changed once written, only replaced, so the mapping stays good. */
+    private ByteBuffer mapSorted() {
+        ByteBuffer sorted;
+        try (FileChannel in = FileChannel.open(_sortedFile.toPath(),
+                StandardOpenOption.READ)) {
+            sorted = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (sorted.limit() < SORTED_HEADER
+                || sorted.getInt(0) != SORTED_MAGIC) {
+            return null;
+        }
+        long covered = sorted.getLong(COVERED);
+        long anchor = sorted.getLong(ANCHOR);
+        byte[] last = new byte[UID_BYTES];
+        sorted.get(ANCHOR + 8, last);
+        try (FileChannel in = FileChannel.open(_file.toPath(),
+                StandardOpenOption.READ)) {
+            if (in.size() < covered) {
+                return null;
+            } else if (anchor < 0) {
+                return covered == HEADER_BYTES ? sorted : null;
+            }
+            ByteBuffer id = readAt(in, anchor, UID_BYTES);
+            return id.equals(ByteBuffer.wrap(last)) ? sorted : null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the sorted index afresh to cover RECORDS, all the records
+     *  of the log, and renames it into place. Only called with the lock
+     *  held. */
+    private void writeSorted(List<LogRecord> records) {
+        TreeMap<String, TreeSet<String>> messages = new TreeMap<>();
+        for (LogRecord r : records) {
+            messages.computeIfAbsent(r.msg, m -> new TreeSet<>()).add(r.id);
+        }
+        ArrayList<byte[]> texts = new ArrayList<>();
+        TreeMap<String, ArrayList<Integer>> words = new TreeMap<>();
+        for (String msg : messages.keySet()) {
+            for (String word : new LinkedHashSet<>(List.of(words(msg)))) {
+                if (!word.isEmpty()) {
+                    words.computeIfAbsent(word, w -> new ArrayList<>())
+                        .add(texts.size());
+                }
+            }
+            texts.add(msg.getBytes(StandardCharsets.UTF_8));
+        }
+        File tmp = new File(_sortedFile.getPath() + ".tmp");
+        try (DataOutputStream out = open(tmp, false)) {
+            LogRecord last = records.isEmpty() ? null
+                : records.get(records.size() - 1);
+            out.writeInt(SORTED_MAGIC);
+            out.writeLong(last == null ? HEADER_BYTES : last.end);
+            out.writeLong(last == null ? -1 : last.offset);
+            out.write(last == null ? new byte[UID_BYTES]
+                      : Utils.fromHex(last.id));
+            out.writeInt(messages.size());
+            out.writeInt(words.size());
+            int offset = SORTED_HEADER + 4 * (messages.size() + words.size());
+            int k = 0;
+            for (TreeSet<String> ids : messages.values()) {
+                out.writeInt(offset);
+                offset += 8 + texts.get(k).length + UID_BYTES * ids.size();
+                k += 1;
+            }
+            for (Map.Entry<String, ArrayList<Integer>> e : words.entrySet()) {
+                out.writeInt(offset);
+                offset += 8 + e.getKey().getBytes(StandardCharsets.UTF_8)
+                    .length + 4 * e.getValue().size();
+            }
+            k = 0;
+            for (TreeSet<String> ids : messages.values()) {
+                out.writeInt(texts.get(k).length);
+                out.write(texts.get(k));
+                out.writeInt(ids.size());
+                for (String id : ids) {
+                    out.write(Utils.fromHex(id));
+                }
+                k += 1;
+            }
+            for (Map.Entry<String, ArrayList<Integer>> e : words.entrySet()) {
+                byte[] word = e.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(word.length);
+                out.write(word);
+                out.writeInt(e.getValue().size());
+                for (int m : e.getValue()) {
+                    out.writeInt(m);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        move(tmp, _sortedFile);
+    }
+
+    /** Returns the number of messages in the sorted index. */
+    private int messageCount() {
+        return _sorted.getInt(SORTED_HEADER - 8);
+    }
+
+    /** Returns the number of words in the sorted index. */
+    private int wordCount() {
+        return _sorted.getInt(SORTED_HEADER - 4);
+    }
+
+    /** Returns where the entry of the Kth message of the sorted index
+     *  starts. */
+    private int messageEntry(int k) {
+        return _sorted.getInt(SORTED_HEADER + 4 * k);
+    }
+
+    /** Returns where the entry of the Kth word of the sorted index
+     *  starts. */
+    private int wordEntry(int k) {
+        return _sorted.getInt(SORTED_HEADER + 4 * (messageCount() + k));
+    }
+
+    /** Returns the Kth message of the sorted index. */
+    private String message(int k) {
+        return string(messageEntry(k));
+    }
+
+    /** Returns the Kth word of the sorted index. */
+    private String word(int k) {
+        return string(wordEntry(k));
+    }
+
+    /** Adds the UIDs of the commits with the Kth message of the sorted
+     *  index to INTO. */
+    private void commits(int k, Collection<String> into) {
+        int at = messageEntry(k);
+        at += 4 + _sorted.getInt(at);
+        int n = _sorted.getInt(at);
+        byte[] raw = new byte[UID_BYTES];
+        for (int i = 0; i < n; i += 1) {
+            _sorted.get(at + 4 + i * UID_BYTES, raw);
+            into.add(Utils.toHex(raw));
+        }
+    }
+
+    /** Returns the positions in the sorted index of the messages that
+     *  contain its Kth word. */
+    private List<Integer> postings(int k) {
+        int at = wordEntry(k);
+        at += 4 + _sorted.getInt(at);
+        int n = _sorted.getInt(at);
+        ArrayList<Integer> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i += 1) {
+            result.add(_sorted.getInt(at + 4 + 4 * i));
+        }
+        return result;
+    }
+
+    /** Returns the string stored in the sorted index at AT: its length
+     *  in UTF-8 and its bytes. */
+    private String string(int at) {
+        byte[] bytes = new byte[_sorted.getInt(at)];
+        _sorted.get(at + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the first of 0 .. N-1 whose KEY is not less than TARGET,
+     *  the keys being in order, or N if there is none. */
+    private static int lowerBound(int n, IntFunction<String> key,
+                                  String target) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.apply(mid).compareTo(target) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Cuts off a partial record left at the end of the file by an
+     *  interrupted append. Only called with the lock held. */
+    private void truncate() {
+        if (_file.length() <= _length) {
+            return;
+        }
+        try (FileChannel out = FileChannel.open(_file.toPath(),
+                StandardOpenOption.WRITE)) {
+            out.truncate(_length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Adds commit ID with message MSG to the index in memory. */
+    private void put(String id, String msg) {
+        _ids.add(id);
+        TreeSet<String> ids = _messages.get(msg);
+        if (ids == null) {
+            ids = new TreeSet<>();
+            _messages.put(msg, ids);
+            for (String word : words(msg)) {
+                if (!word.isEmpty()) {
+                    _words.computeIfAbsent(word, w -> new HashSet<>())
+                        .add(msg);
+                }
+            }
+        }
+        ids.add(id);
+    }
+
+    /** Renames TMP over FILE. */
+    private static void move(File tmp, File file) {
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream writing to FILE, after what is there already if
+     *  APPEND. */
+    private static DataOutputStream open(File file, boolean append)
+        throws IOException {
+        OutputStream out = append
+            ? Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE,
+                                    StandardOpenOption.APPEND)
+            : Files.newOutputStream(file.toPath());
+        return new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    /** Writes the record of commit ID with message MSG to OUT. */
+    private static void write(DataOutputStream out, String id, String msg)
+        throws IOException {
+        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+        out.write(Utils.fromHex(id));
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** A record of the log. */
+    private static final class LogRecord {
+        /** The record of commit ID with message MSG, starting at OFFSET
+         *  in the log. */
+        LogRecord(long offset, String id, String msg) {
+            this.offset = offset;
+            this.id = id;
+            this.msg = msg;
+            this.end = offset + UID_BYTES + 4
+                + msg.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        /** Where the record starts in the log. */
+        final long offset;
+        /** Where the next record starts. */
+        final long end;
+        /** UID of the commit. */
+        final String id;
+        /** Its message. */
+        final String msg;
+    }
+
+    /** Leading word of the log. */
+    private static final int MAGIC = 0x474d5347;
+    /** Size of the header of the log: MAGIC. */
+    private static final int HEADER_BYTES = 4;
+    /** Leading word of the sorted index. It is followed by the length of
+     *  the log it covers, where the last record covered starts (-1 if
+     *  none) and that record's UID, the numbers of messages and of
+     *  words, where each message's entry and then each word's entry
+     *  starts, and the entries. A message entry is the length of the
+     *  message in UTF-8, the message, a count and the UIDs of the commits
+     *  with it; a word entry is the length of the word, the word, a count
+     *  and the positions of the messages containing it. */
+    private static final int SORTED_MAGIC = 0x474d5358;
+    /** Where the sorted index holds the length of the log it covers. */
+    private static final int COVERED = 4;
+    /** Where the sorted index holds where the last record covered
+     *  starts, followed by its UID. */
+    private static final int ANCHOR = 12;
+    /** Size of the header of the sorted index. */
+    private static final int SORTED_HEADER = 48;
+    /** File name suffix of the sorted index. */
+    private static final String SORTED_SUFFIX = ".idx";
+    /** Fewest bytes of records not covered by the sorted index for which
+     *  it is written afresh. */
+    private static final long TAIL_MIN = 1 << 16;
+    /** The sorted index is written afresh once the records it does not
+     *  cover are more than this fraction of the log. */
+    private static final int TAIL_SHARE = 8;
+    /** Length of a UID in binary. */
+    private static final int UID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** The log. */
+    private final File _file;
+    /** The sorted index. */
+    private final File _sortedFile;
+    /** True once the files have been read. */
+    private boolean _loaded;
+    /** Length of the part of the log read. */
+    private long _length;
+    /** Length of the part of the log the sorted index covers. */
+    private long _covered;
+    /** The mapped sorted index, or null if there is none. */
+    private ByteBuffer _sorted;
+    /** UIDs of the commits read from the log, in the order of their
+     *  records. */
+    private final LinkedHashSet<String> _ids = new LinkedHashSet<>();
+    /** The UIDs of the commits with each message read from the log, by
+     *  message. */
+    private final TreeMap<String, TreeSet<String>> _messages =
+        new TreeMap<>();
+    /** The messages read from the log containing each word, by word. */
+    private final HashMap<String, HashSet<String>> _words = new HashMap<>();
+}
@@ -0,0 +1,731 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/** A content-addressed store of objects of one kind. New objects are
+ *  written loose, one file per object, and are later moved into
+ *  immutable pack files by repack. Readers look in both places, so
+ *  every command works the same over either layout. As in Git, a loose
+ *  object is kept in a subdirectory named by the first two digits of
+ *  its id, so that finding the objects whose ids begin with a prefix
+ *  lists only one small directory.
+ *  @author shivang singh
+ */
+class ObjectStore {
+
+    /** A store keeping loose objects in LOOSE and packs in PACKS, and
+     *  compressing new objects with the configured codec, which is
+     *  looked up whenever objects are written, so that a daemon follows
+     *  the setting of each command it runs. */
+    ObjectStore(File loose, File packs) {
+        this(loose, packs, null);
+    }
+
+    /** A store keeping loose objects in LOOSE and packs in PACKS, and
+     *  compressing new objects with CODEC, or the configured codec if
+     *  it is null. */
+    ObjectStore(File loose, File packs, Codec codec) {
+        _loose = loose;
+        _packDir = packs;
+        _codec = codec;
+    }
+
+    /** Returns true iff object ID is in this store. */
+    boolean contains(String id) {
+        return isLoose(id) || packed(id) || rescan() && packed(id);
+    }
+
+    /** Returns true iff object ID is in one of the packs. */
+    private boolean packed(String id) {
+        for (PackFile p : packs()) {
+            if (p.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the bytes of object ID, or null if there is none. */
+    byte[] read(String id) {
+        ByteBuffer stored = mapStored(id);
+        if (stored == null) {
+            return null;
+        }
+        if (codecOf(stored) == Codec.NONE) {
+            byte[] data = new byte[stored.remaining()];
+            stored.get(data);
+            return data;
+        }
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the bytes of object ID, or null if there is
+     *  none. */
+    InputStream open(String id) {
+        ByteBuffer stored = mapStored(id);
+        return stored == null ? null : decode(stored);
+    }
+
+    /** Returns a stream of the bytes of the stored object STORED,
+     *  decompressed with its codec. STORED itself is not moved. */
+    private static InputStream decode(ByteBuffer stored) {
+        ByteBuffer data = stored.slice();
+        Codec codec = codecOf(data);
+        if (codec != Codec.NONE) {
+            data.position(Codec.HEADER_LENGTH);
+        }
+        return codec.decompress(new BufferInputStream(data));
+    }
+
+    /** Returns true iff object ID exists and its bytes begin with
+     *  PREFIX. Only the start of a compressed object is decompressed. */
+    boolean startsWith(String id, byte[] prefix) {
+        try (InputStream in = open(id)) {
+            return in != null
+                    && Arrays.equals(in.readNBytes(prefix.length), prefix);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the bytes of object ID, less its first SKIP bytes, to the
+     *  file DEST, creating or overwriting it. An uncompressed object is
+     *  moved with FileChannel.transferTo and never copied into the Java
+     *  heap; a compressed one is decompressed a block at a time.
+     *  Returns false if there is no such object. */
+    boolean transferTo(String id, long skip, File dest) {
+        ByteBuffer stored = mapStored(id);
+        if (stored == null) {
+            return false;
+        } else if (codecOf(stored) != Codec.NONE) {
+            try (InputStream in = open(id)) {
+                in.skipNBytes(skip);
+                Files.copy(in, dest.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                return true;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        File loose = looseFile(id);
+        try (FileChannel out = FileChannel.open(dest.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!loose.isFile()) {
+                for (PackFile p : packs()) {
+                    if (p.transferTo(id, skip, out)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            try (FileChannel in = FileChannel.open(loose.toPath(),
+                    StandardOpenOption.READ)) {
+                PackFile.transfer(in, skip, in.size() - skip, out);
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores DATA as object ID unless it is already present. The object
+     *  is written to a temporary file and renamed into place, so that no
+     *  other process sees it half written. */
+    void write(String id, byte[] data) {
+        if (!contains(id)) {
+            byte[] stored = codec().encode(data);
+            File tmp = tempFile();
+            Utils.writeContents(tmp, stored);
+            install(id, tmp);
+        } else {
+            freshen(id);
+        }
+    }
+
+    /** Stores PREFIX followed by the bytes remaining in IN as a new
+     *  object, compressing them as they are written, and returns its id:
+     *  the SHA-1 hash of the bytes from IN alone. Memory use does not
+     *  depend on the number of bytes. */
+    String store(byte[] prefix, InputStream in) {
+        Codec codec = codec();
+        File tmp = tempFile();
+        String id;
+        try (OutputStream out = codec.encoder(new BufferedOutputStream(
+                Files.newOutputStream(tmp.toPath())))) {
+            out.write(prefix);
+            id = Utils.sha1(in, out);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(id, tmp);
+        return id;
+    }
+
+    /** Replaces every object serialized by an older version with
+     *  CONVERT applied to its bytes. Loose objects are replaced in place;
+     *  each pack holding such objects is rewritten as a new pack. Returns
+     *  the number of objects converted. */
+    int upgrade(UnaryOperator<byte[]> convert) {
+        Codec codec = codec();
+        int converted = 0;
+        for (String id : looseIds()) {
+            if (isSerialized(mapStored(id))) {
+                File tmp = tempFile();
+                Utils.writeContents(tmp,
+                        codec.encode(convert.apply(read(id))));
+                replace(id, tmp);
+                converted += 1;
+            }
+        }
+        for (PackFile p : new ArrayList<>(packs())) {
+            boolean stale = false;
+            for (int k = 0; k < p.size() && !stale; k += 1) {
+                stale = isSerialized(p.map(p.id(k)));
+            }
+            if (!stale) {
+                continue;
+            }
+            TreeMap<String, File> objects = new TreeMap<>();
+            for (int k = 0; k < p.size(); k += 1) {
+                String id = p.id(k);
+                File tmp = tempFile();
+                objects.put(id, tmp);
+                ByteBuffer stored = p.map(id);
+                if (isSerialized(stored)) {
+                    byte[] data;
+                    try (InputStream in = decode(stored)) {
+                        data = in.readAllBytes();
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                    Utils.writeContents(tmp,
+                            codec.encode(convert.apply(data)));
+                    converted += 1;
+                } else {
+                    try (FileChannel out = FileChannel.open(tmp.toPath(),
+                            StandardOpenOption.WRITE)) {
+                        p.transferTo(id, 0, out);
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                }
+            }
+            PackFile.write(_packDir, objects);
+            p.delete();
+            invalidate();
+            for (File tmp : objects.values()) {
+                tmp.delete();
+            }
+        }
+        return converted;
+    }
+
+    /** Returns a new, empty file in this store to write an object into
+     *  before its id is known. */
+    private File tempFile() {
+        try {
+            return File.createTempFile(TEMP_PREFIX, null, _loose);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Makes TMP, a file from tempFile, the loose object ID, replacing
+     *  any loose object already there. */
+    private void replace(String id, File tmp) {
+        File loose = looseFile(id);
+        makeFanOut(loose);
+        try {
+            Files.move(tmp.toPath(), loose.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _unsynced.add(loose);
+    }
+
+    /** Makes TMP, a file from tempFile, the loose object ID, or deletes
+     *  it if ID is already present. */
+    private void install(String id, File tmp) {
+        if (contains(id)) {
+            tmp.delete();
+            freshen(id);
+            return;
+        }
+        File loose = looseFile(id);
+        makeFanOut(loose);
+        try {
+            Files.move(tmp.toPath(), loose.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _unsynced.add(loose);
+    }
+
+    /** Makes the subdirectory the loose object LOOSE goes in, if it is
+     *  missing. */
+    private void makeFanOut(File loose) {
+        if (loose.getParentFile().mkdir()) {
+            _unsynced.add(loose.getParentFile());
+        }
+    }
+
+    /** Forces the loose objects written since the last call to disk,
+     *  and then the directories that name them, so that no branch or
+     *  index can be saved referring to an object a crash could lose. */
+    void sync() {
+        ArrayList<File> written = new ArrayList<>(_unsynced);
+        _unsynced.removeAll(written);
+        HashSet<File> dirs = new HashSet<>();
+        for (File f : written) {
+            if (f.isFile()) {
+                Utils.force(f);
+            }
+            dirs.add(f.getParentFile());
+        }
+        for (File dir : dirs) {
+            Utils.force(dir);
+        }
+    }
+
+    /** Marks object ID, which is present, as just written, by setting
+     *  the modification time of its loose file or of the pack holding
+     *  it. An object that is stored again is about to be used again, and
+     *  gc leaves recently written objects alone. */
+    void freshen(String id) {
+        long now = System.currentTimeMillis();
+        if (isLoose(id)) {
+            looseFile(id).setLastModified(now);
+            return;
+        }
+        for (PackFile p : packs()) {
+            if (p.contains(id)) {
+                p.packFile().setLastModified(now);
+                return;
+            }
+        }
+    }
+
+    /** Returns the ids of the objects written at or after the time
+     *  CUTOFF, in milliseconds: loose objects modified since then and
+     *  every object of a pack modified since then. */
+    List<String> recent(long cutoff) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String id : looseIds()) {
+            if (looseFile(id).lastModified() >= cutoff) {
+                result.add(id);
+            }
+        }
+        for (PackFile p : packs()) {
+            if (p.packFile().lastModified() >= cutoff) {
+                for (int k = 0; k < p.size(); k += 1) {
+                    result.add(p.id(k));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ids of the objects not in KEEP that were last written
+     *  before the time CUTOFF, in milliseconds, in order. */
+    List<String> garbage(Set<String> keep, long cutoff) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String id : looseIds()) {
+            if (!keep.contains(id)
+                    && looseFile(id).lastModified() < cutoff) {
+                result.add(id);
+            }
+        }
+        for (PackFile p : packs()) {
+            if (p.packFile().lastModified() < cutoff) {
+                for (int k = 0; k < p.size(); k += 1) {
+                    if (!keep.contains(p.id(k))) {
+                        result.add(p.id(k));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Deletes those of the objects IDS that have still not been written
+     *  since the time CUTOFF, checking each loose object's time just
+     *  before deleting it, and returns the rest: those stored again in
+     *  the meantime. Each pack holding any of them, unless it has been
+     *  written since CUTOFF, is replaced by a pack of the rest of its
+     *  objects, if there are any. Subdirectories of loose objects
+     *  are left, even if empty, since another process may be about to
+     *  move an object into one. Temporary files left before CUTOFF by
+     *  writes that never finished are deleted too. */
+    List<String> delete(Collection<String> ids, long cutoff) {
+        HashSet<String> gone = new HashSet<>(ids);
+        ArrayList<String> kept = new ArrayList<>();
+        for (String id : ids) {
+            File loose = looseFile(id);
+            if (loose.isFile() && loose.lastModified() >= cutoff) {
+                gone.remove(id);
+                kept.add(id);
+            } else {
+                loose.delete();
+            }
+        }
+        for (PackFile p : new ArrayList<>(packs())) {
+            if (p.packFile().lastModified() >= cutoff) {
+                for (int k = 0; k < p.size(); k += 1) {
+                    if (gone.remove(p.id(k))) {
+                        kept.add(p.id(k));
+                    }
+                }
+                continue;
+            }
+            TreeMap<String, File> rest = new TreeMap<>();
+            boolean changed = false;
+            for (int k = 0; k < p.size(); k += 1) {
+                if (gone.contains(p.id(k))) {
+                    changed = true;
+                } else {
+                    rest.put(p.id(k), null);
+                }
+            }
+            if (!changed) {
+                continue;
+            }
+            for (String id : rest.keySet()) {
+                File tmp = tempFile();
+                rest.put(id, tmp);
+                try (FileChannel out = FileChannel.open(tmp.toPath(),
+                        StandardOpenOption.WRITE)) {
+                    p.transferTo(id, 0, out);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            if (!rest.isEmpty()) {
+                PackFile.write(_packDir, rest);
+            }
+            p.delete();
+            invalidate();
+            for (File tmp : rest.values()) {
+                tmp.delete();
+            }
+        }
+        File[] temps = _loose.listFiles((d, n) -> n.startsWith(TEMP_PREFIX));
+        if (temps != null) {
+            for (File tmp : temps) {
+                if (tmp.lastModified() < cutoff) {
+                    tmp.delete();
+                }
+            }
+        }
+        return kept;
+    }
+
+    /** Returns a read-only mapping of object ID as it is stored, or null
+     *  if there is none. A loose object another process packs while
+     *  this one looks for it is found in the new pack. */
+    private ByteBuffer mapStored(String id) {
+        if (isLoose(id)) {
+            File loose = looseFile(id);
+            try (FileChannel in = FileChannel.open(loose.toPath(),
+                    StandardOpenOption.READ)) {
+                return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            } catch (NoSuchFileException excp) {
+                /* Packed since isLoose looked: fall through. */
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        ByteBuffer data = mapPacked(id);
+        if (data == null && rescan()) {
+            data = mapPacked(id);
+        }
+        return data;
+    }
+
+    /** Returns a read-only mapping of object ID from one of the packs,
+     *  or null if none has it. */
+    private ByteBuffer mapPacked(String id) {
+        for (PackFile p : packs()) {
+            ByteBuffer data = p.map(id);
+            if (data != null) {
+                return data;
+            }
+        }
+        return null;
+    }
+
+    /** Returns true iff the stored object STORED, once decompressed, is
+     *  a Java serialization stream, as every object written before
+     *  stored formats were versioned is. Only its first bytes are
+     *  decompressed. */
+    private static boolean isSerialized(ByteBuffer stored) {
+        try (InputStream in = decode(stored)) {
+            byte[] head = in.readNBytes(2);
+            return head.length == 2
+                && ((head[0] & 0xff) << 8 | (head[1] & 0xff)) == SERIAL_MAGIC;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the codec new objects are written with. */
+    private Codec codec() {
+        return _codec != null ? _codec : Codec.configured();
+    }
+
+    /** Returns the codec of the stored object STORED. */
+    private static Codec codecOf(ByteBuffer stored) {
+        byte[] prefix = new byte[Codec.HEADER_LENGTH];
+        int n = Math.min(prefix.length, stored.remaining());
+        stored.get(stored.position(), prefix, 0, n);
+        return Codec.of(prefix, n);
+    }
+
+    /** Returns the ids of all objects in this store, in order. */
+    List<String> ids() {
+        return withPrefix("");
+    }
+
+    /** Returns the ids of all objects beginning with PREFIX, in order.
+     *  Packs are searched by bisecting their sorted indexes, and loose
+     *  objects by listing only the subdirectories PREFIX can lead to. */
+    List<String> withPrefix(String prefix) {
+        TreeSet<String> result = new TreeSet<>(looseIds(prefix));
+        if (result.isEmpty()) {
+            rescan();
+        }
+        for (PackFile p : packs()) {
+            result.addAll(p.withPrefix(prefix));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the ids of the loose objects in this store, in order. */
+    private List<String> looseIds() {
+        return looseIds("");
+    }
+
+    /** Returns the ids of the loose objects in this store that begin
+     *  with PREFIX, in order. */
+    private List<String> looseIds(String prefix) {
+        List<String> result = new ArrayList<>();
+        String[] dirs;
+        if (prefix.length() >= FANOUT) {
+            dirs = new String[] { prefix.substring(0, FANOUT) };
+        } else {
+            dirs = _loose.list((d, n) -> n.length() == FANOUT
+                    && n.startsWith(prefix));
+            if (dirs == null) {
+                return result;
+            }
+            Arrays.sort(dirs);
+        }
+        for (String dir : dirs) {
+            List<String> names =
+                Utils.plainFilenamesIn(new File(_loose, dir));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                String id = dir + name;
+                if (id.length() == Utils.UID_LENGTH
+                        && id.startsWith(prefix)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the file that holds object ID when it is loose. */
+    private File looseFile(String id) {
+        return new File(new File(_loose, id.substring(0, FANOUT)),
+                id.substring(FANOUT));
+    }
+
+    /** Returns true iff ID is a full id and that object is loose. */
+    private boolean isLoose(String id) {
+        return id.length() == Utils.UID_LENGTH && looseFile(id).isFile();
+    }
+
+    /** Moves loose objects left directly in the loose directory by an
+     *  older version into their subdirectories. Returns the number of
+     *  objects moved. */
+    int fanOut() {
+        List<String> names = Utils.plainFilenamesIn(_loose);
+        int moved = 0;
+        if (names == null) {
+            return moved;
+        }
+        for (String name : names) {
+            if (name.length() == Utils.UID_LENGTH) {
+                File loose = looseFile(name);
+                loose.getParentFile().mkdir();
+                if (!new File(_loose, name).renameTo(loose)) {
+                    throw new IllegalArgumentException(
+                        "cannot move object " + name);
+                }
+                moved += 1;
+            }
+        }
+        return moved;
+    }
+
+    /** Moves every loose object into a single new pack. Returns the
+     *  number of objects packed. */
+    int repack() {
+        TreeMap<String, File> objects = new TreeMap<>();
+        for (String id : looseIds()) {
+            objects.put(id, looseFile(id));
+        }
+        if (objects.isEmpty()) {
+            return 0;
+        }
+        _packDir.mkdirs();
+        PackFile.write(_packDir, objects);
+        invalidate();
+        for (File loose : objects.values()) {
+            loose.delete();
+        }
+        return objects.size();
+    }
+
+    /** Marks the list of packs stale, so that it is listed again on
+     *  next use. */
+    synchronized void invalidate() {
+        _stale = true;
+    }
+
+    /** Lists the packs again, since another process may have added or
+     *  deleted some, and returns true iff the list changed. Called when
+     *  a lookup misses, so that an object another process has just
+     *  packed is still found. */
+    private synchronized boolean rescan() {
+        List<PackFile> old = packs();
+        _stale = true;
+        return !packs().equals(old);
+    }
+
+    /** Returns the packs of this store, listing them on first use and
+     *  when the list is stale. A pack listed before is reused rather
+     *  than opened again. The list returned is not changed by a later
+     *  listing, so a caller may go on reading it meanwhile. */
+    private synchronized List<PackFile> packs() {
+        if (_packs == null || _stale) {
+            HashMap<File, PackFile> open = new HashMap<>();
+            if (_packs != null) {
+                for (PackFile p : _packs) {
+                    open.put(p.indexFile(), p);
+                }
+            }
+            ArrayList<PackFile> packs = new ArrayList<>();
+            File[] idxs = _packDir.listFiles((d, n) ->
+                    n.endsWith(PackFile.IDX_SUFFIX));
+            if (idxs != null) {
+                Arrays.sort(idxs);
+                for (File idx : idxs) {
+                    PackFile p = open.get(idx);
+                    packs.add(p != null ? p : new PackFile(idx));
+                }
+            }
+            _packs = packs;
+            _stale = false;
+        }
+        return _packs;
+    }
+
+    /** An InputStream over the remaining bytes of a buffer. */
+    private static class BufferInputStream extends InputStream {
+        /** A stream of the remaining bytes of DATA. */
+        BufferInputStream(ByteBuffer data) {
+            _data = data;
+        }
+
+        @Override
+        public int read() {
+            return _data.hasRemaining() ? _data.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!_data.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, _data.remaining());
+            _data.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, _data.remaining()));
+            _data.position(_data.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return _data.remaining();
+        }
+
+        /** The bytes not yet read. */
+        private final ByteBuffer _data;
+    }
+
+    /** Leading bytes of a Java serialization stream. */
+    private static final int SERIAL_MAGIC = 0xaced;
+
+    /** Prefix of the names of objects still being written. */
+    private static final String TEMP_PREFIX = "tmp_";
+
+    /** Number of leading digits of an id naming its loose subdirectory. */
+    private static final int FANOUT = 2;
+
+    /** Directory of loose objects. */
+    private final File _loose;
+    /** Directory of pack files. */
+    private final File _packDir;
+    /** Codec new objects are written with, or null to use the
+     *  configured one. */
+    private final Codec _codec;
+    /** Loose objects and subdirectories made and not yet forced to
+     *  disk. */
+    private final Set<File> _unsynced = ConcurrentHashMap.newKeySet();
+    /** Open packs, or null before first use. */
+    private List<PackFile> _packs;
+    /** True iff _packs must be listed again before use. */
+    private boolean _stale;
+}
@@ -0,0 +1,311 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** An immutable, append-only pack of objects. A pack is a pair of
+ *  files: NAME.pack holds the concatenated object bytes and NAME.idx
+ *  holds a table of (id, offset, length) entries sorted by id, so that
+ *  lookups are a binary search over a memory-mapped index.
+ *  @author shivang singh
+ */
+class PackFile {
+
+    /** Opens the pack whose index file is IDX. */
+    PackFile(File idx) {
+        String name = idx.getName();
+        _idx = idx;
+        _pack = new File(idx.getParentFile(),
+                name.substring(0, name.length() - IDX_SUFFIX.length())
+                + PACK_SUFFIX);
+        try (RandomAccessFile in = new RandomAccessFile(idx, "r")) {
+            _index = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    0, in.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (_index.getInt(0) != IDX_MAGIC) {
+            throw new IllegalArgumentException("bad pack index " + idx);
+        }
+        _count = _index.getInt(4);
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Returns the id of the Kth object in sorted order. */
+    String id(int k) {
+        byte[] raw = new byte[ID_BYTES];
+        _index.get(entry(k), raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Returns the position of ID in this pack's index, or -1. */
+    int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        int k = lowerBound(id);
+        return k < _count && id(k).equals(id) ? k : -1;
+    }
+
+    /** Returns true iff this pack contains ID. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the ids in this pack beginning with PREFIX, in order. */
+    List<String> withPrefix(String prefix) {
+        List<String> result = new ArrayList<>();
+        for (int k = lowerBound(prefix); k < _count; k += 1) {
+            String id = id(k);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        return result;
+    }
+
+    /** Returns a read-only mapping of the bytes of object ID, or null
+     *  if it is not here. */
+    ByteBuffer map(String id) {
+        int k = find(id);
+        return k < 0 ? null : slice(k);
+    }
+
+    /** Copies the bytes of object ID, less its first SKIP bytes, to OUT
+     *  without passing them through the Java heap. Returns false if ID
+     *  is not here. */
+    boolean transferTo(String id, long skip, WritableByteChannel out) {
+        int k = find(id);
+        if (k < 0) {
+            return false;
+        }
+        try {
+            if (data() == null) {
+                transfer(_channel, offset(k) + skip, length(k) - skip, out);
+                return true;
+            }
+            ByteBuffer src = slice(k);
+            src.position((int) skip);
+            while (src.hasRemaining()) {
+                out.write(src);
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies COUNT bytes starting at POSITION of IN to OUT. */
+    static void transfer(FileChannel in, long position, long count,
+                         WritableByteChannel out) throws IOException {
+        while (count > 0) {
+            long n = in.transferTo(position, count, out);
+            if (n <= 0) {
+                throw new IOException("short transfer");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    /** Returns the index file of this pack. */
+    File indexFile() {
+        return _idx;
+    }
+
+    /** Returns the data file of this pack. */
+    File packFile() {
+        return _pack;
+    }
+
+    /** Writes OBJECTS, a map of ids to the files holding their bytes, as
+     *  a new pack in directory DIR and returns it. The pack is named by
+     *  the SHA-1 hash of its data. The data file is written first and
+     *  the index is renamed into place last, so a reader never sees an
+     *  index for a partially written pack. */
+    static PackFile write(File dir, TreeMap<String, File> objects) {
+        File tmpPack = new File(dir, "pack" + PACK_SUFFIX + TMP_SUFFIX);
+        File tmpIdx = new File(dir, "pack" + IDX_SUFFIX + TMP_SUFFIX);
+        try {
+            long[] offsets = new long[objects.size()];
+            long offset = HEADER_BYTES;
+            int k;
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            try (DataOutputStream out = new DataOutputStream(
+                    new DigestOutputStream(new BufferedOutputStream(
+                            Files.newOutputStream(tmpPack.toPath())), md))) {
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(objects.size());
+                k = 0;
+                for (File data : objects.values()) {
+                    offsets[k] = offset;
+                    offset += Files.copy(data.toPath(), out);
+                    k += 1;
+                }
+            }
+            String name = "pack-" + Utils.toHex(md.digest());
+            File pack = new File(dir, name + PACK_SUFFIX);
+            File idx = new File(dir, name + IDX_SUFFIX);
+            Files.move(tmpPack.toPath(), pack.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Files.newOutputStream(tmpIdx.toPath())))) {
+                out.writeInt(IDX_MAGIC);
+                out.writeInt(objects.size());
+                k = 0;
+                for (Map.Entry<String, File> e : objects.entrySet()) {
+                    out.write(Utils.fromHex(e.getKey()));
+                    out.writeLong(offsets[k]);
+                    out.writeLong(e.getValue().length());
+                    k += 1;
+                }
+            }
+            Files.move(tmpIdx.toPath(), idx.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return new PackFile(idx);
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deletes this pack, index first. */
+    void delete() {
+        close();
+        _idx.delete();
+        _pack.delete();
+    }
+
+    /** Returns a read-only buffer of the bytes of the Kth object. */
+    private ByteBuffer slice(int k) {
+        ByteBuffer data = data();
+        if (data != null) {
+            return data.slice((int) offset(k), (int) length(k));
+        }
+        try {
+            return _channel.map(FileChannel.MapMode.READ_ONLY, offset(k),
+                    length(k));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a mapping of the whole data file, or null if it is too
+     *  large to map at once, in which case _channel is left open on it
+     *  instead. The file is opened only on first use, and a mapping
+     *  needs no open file, so only a pack of over 2 GiB holds one. */
+    private synchronized ByteBuffer data() {
+        if (_data == null && _channel == null) {
+            try {
+                FileChannel in = FileChannel.open(_pack.toPath(),
+                        StandardOpenOption.READ);
+                if (in.size() > Integer.MAX_VALUE) {
+                    _channel = in;
+                } else {
+                    try (in) {
+                        _data = in.map(FileChannel.MapMode.READ_ONLY, 0,
+                                in.size());
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _data;
+    }
+
+    /** Closes the data file, if it is held open. */
+    private synchronized void close() {
+        if (_channel != null) {
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the offset in the data file of the Kth object. */
+    private long offset(int k) {
+        return _index.getLong(entry(k) + ID_BYTES);
+    }
+
+    /** Returns the length of the Kth object. */
+    private long length(int k) {
+        return _index.getLong(entry(k) + ID_BYTES + 8);
+    }
+
+    /** Returns the byte offset of the Kth index entry. */
+    private int entry(int k) {
+        return HEADER_BYTES + k * ENTRY_BYTES;
+    }
+
+    /** Returns the first position whose id is not less than KEY. */
+    private int lowerBound(String key) {
+        int lo = 0, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (id(mid).compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** File name suffix of pack data files. */
+    static final String PACK_SUFFIX = ".pack";
+    /** File name suffix of pack index files. */
+    static final String IDX_SUFFIX = ".idx";
+    /** File name suffix of files being written. */
+    private static final String TMP_SUFFIX = ".tmp";
+    /** Leading word of a pack data file. */
+    private static final int PACK_MAGIC = 0x4750414b;
+    /** Leading word of a pack index file. */
+    private static final int IDX_MAGIC = 0x47494458;
+    /** Size of a pack or index header: magic and count. */
+    private static final int HEADER_BYTES = 8;
+    /** Size of a binary object id. */
+    private static final int ID_BYTES = 20;
+    /** Size of an index entry: id, offset and length. */
+    private static final int ENTRY_BYTES = ID_BYTES + 8 + 8;
+
+    /** The index file. */
+    private final File _idx;
+    /** The data file. */
+    private final File _pack;
+    /** The mapped contents of the index file. */
+    private final MappedByteBuffer _index;
+    /** Number of objects in this pack. */
+    private final int _count;
+    /** The mapped contents of the data file, or null before first use
+     *  or if it is too large to map at once. */
+    private MappedByteBuffer _data;
+    /** The open data file, if it is too large to map at once, or null. */
+    private FileChannel _channel;
+}
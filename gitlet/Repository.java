@@ -1,13 +1,31 @@
 package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /** This class represents a local repository.
@@ -20,11 +38,114 @@ public class Repository {
      */
     @SuppressWarnings({"unchecked", "deprecated"})
     Repository() {
+        int format = HEAD.exists() ? storedFormat() : 0;
+        if (format > Integer.parseInt(FORMAT)) {
+            System.out.println("This repository was made by a newer "
+                    + "version of Gitlet.");
+            throw new GitletException("Newer repository format.");
+        }
+        if (JOURNAL_FILE.exists()) {
+            recover();
+        }
         if (HEAD.exists()) {
-            curBranch = Utils.readContentsAsString(HEAD);
-            branchHeads = Utils.readObject(BRANCHES, HashMap.class);
-            addMap = Utils.readObject(ADD, HashMap.class);
-            toRemove = Utils.readObject(REMOVE, HashSet.class);
+            if (format < Integer.parseInt(FORMAT)) {
+                upgrade();
+            }
+            if (!TREES.exists()) {
+                TREES.mkdir();
+                TREE_PACKS.mkdirs();
+            }
+            readState();
+        }
+    }
+
+    /** Returns the format version the repository's objects are stored
+     * in: 0 if none is recorded, as in repositories made before formats
+     * were, and the largest int if what is recorded is not a number any
+     * version of this one knows, so that it is never taken to be older.
+     * @return the version
+     */
+    private static int storedFormat() {
+        if (!VERSION.exists()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(
+                Utils.readContentsAsString(VERSION).trim());
+        } catch (NumberFormatException excp) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /** Reads the current branch, the branch heads and the staging area
+     * from their files. Branch heads this process has changed but not
+     * yet saved keep their new values.
+     */
+    @SuppressWarnings("unchecked")
+    private void readState() {
+        curBranch = Utils.readContentsAsString(HEAD);
+        HashMap<String, String> heads =
+            Utils.readObject(BRANCHES, HashMap.class);
+        for (String b: _expected.keySet()) {
+            if (branchHeads.containsKey(b)) {
+                heads.put(b, branchHeads.get(b));
+            } else {
+                heads.remove(b);
+            }
+        }
+        branchHeads = heads;
+        addMap = Utils.readObject(ADD, HashMap.class);
+        toRemove = Utils.readObject(REMOVE, HashSet.class);
+    }
+
+    /** Finishes an update of the state files that was interrupted, unless
+     * another process is in the middle of one, which it will finish.
+     */
+    private static void recover() {
+        LockFile lock = LockFile.tryAcquire(BRANCHES);
+        if (lock != null) {
+            try (lock) {
+                JOURNAL.recover();
+            }
+        }
+    }
+
+    /** Takes the lock on the staging area, which every command that
+     * changes the staging area, the current branch or the working tree
+     * holds until it ends, and reads the state again, since another
+     * process may have changed it since this one read it.
+     */
+    private void lockStage() {
+        if (_stageLock == null) {
+            _stageLock = LockFile.acquire(STAGE);
+            readState();
+        }
+    }
+
+    /** Releases the lock on the staging area, if it is held, unless saves
+     * are deferred, in which case flush releases it.
+     */
+    void unlock() {
+        if (!_deferred && _stageLock != null) {
+            _stageLock.close();
+            _stageLock = null;
+        }
+    }
+
+    /** Makes UID the head of BRANCH, or removes BRANCH if UID is null.
+     * The change is saved only if no other process has moved the branch
+     * since this one read it.
+     * @param branch the branch
+     * @param uid its new head
+     */
+    private void setHead(String branch, String uid) {
+        if (!_expected.containsKey(branch)) {
+            _expected.put(branch, branchHeads.get(branch));
+        }
+        if (uid == null) {
+            branchHeads.remove(branch);
+        } else {
+            branchHeads.put(branch, uid);
         }
     }
 
@@ -46,24 +167,25 @@ public class Repository {
             REMOVE.createNewFile();
             COMMITS.mkdir();
             BLOBS.mkdir();
+            TREES.mkdir();
+            COMMIT_PACKS.mkdirs();
+            BLOB_PACKS.mkdirs();
+            TREE_PACKS.mkdirs();
             BRANCHES.createNewFile();
             HEAD.createNewFile();
+            _stageLock = LockFile.acquire(STAGE);
             Date d = new Date(0);
             d.setDate(0);
-            SimpleDateFormat f = new SimpleDateFormat("EEE "
-                    + "MMM d HH:mm:ss yyyy Z");
+            SimpleDateFormat f = new SimpleDateFormat(Main.DATE_FORMAT);
             Commit initialCommit = new Commit("initial commit",
-                                f.format(d), null, null);
+                                f.format(d), null, null,
+                                Tree.write(new HashMap<>()));
             String curID = initialCommit.getUID();
             curBranch = "master";
-            branchHeads.put(curBranch, curID);
-            File toCommits = new File(".gitlet//commits//" + curID);
-            toCommits.createNewFile();
-            Utils.writeObject(toCommits, initialCommit);
-            Utils.writeObject(BRANCHES, branchHeads);
-            Utils.writeContents(HEAD, curBranch);
-            Utils.writeObject(ADD, addMap);
-            Utils.writeObject(REMOVE, toRemove);
+            setHead(curBranch, curID);
+            saveCommit(initialCommit);
+            Utils.writeContents(VERSION, FORMAT);
+            saveState();
         }
     }
 
@@ -72,15 +194,18 @@ public class Repository {
      * @throws IOException
      * */
     void add(String fileName) throws IOException {
+        lockStage();
+        fileName = repoPath(fileName);
         File tmpFile = new File(fileName);
         if (!tmpFile.exists()) {
             System.out.println("File does not exist.");
             throw new GitletException("File does not exist.");
         }
-        Blob b = new Blob(tmpFile);
-        Commit temp = getCommit();
-        if (temp.getMap().containsKey(fileName)) {
-            if (temp.getMap().get(fileName).equals(b.getUID())) {
+        HashMap<String, String> tracked = getCommit().getMap();
+        Blob b = Blob.store(tmpFile, tracked.get(fileName));
+        INDEX.record(tmpFile, b.getUID());
+        if (tracked.containsKey(fileName)) {
+            if (tracked.get(fileName).equals(b.getUID())) {
                 addMap.remove(fileName);
             } else {
                 addMap.put(fileName, b.getUID());
@@ -91,11 +216,29 @@ public class Repository {
         if (toRemove.contains(fileName)) {
             toRemove.remove(fileName);
         }
-        File toAdd = new File(".gitlet//blobs//" + b.getUID());
-        toAdd.createNewFile();
-        Utils.writeObject(toAdd, b);
-        Utils.writeObject(ADD, addMap);
-        Utils.writeObject(REMOVE, toRemove);
+        saveState();
+        saveIndex();
+    }
+
+    /** Returns the file named FILENAME, relative to the working directory,
+     * as the path tracked files are named by: names from the root of the
+     * repository separated by Tree.SEPARATOR, with no "." or ".." names,
+     * so that ./f, a//f and b/../a/f all name a/f.
+     * @param fileName Name of file as given by the user
+     * @return its path in the repository
+     */
+    static String repoPath(String fileName) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        Path path = root.resolve(fileName).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            System.out.println("File is outside the repository.");
+            throw new GitletException("File is outside the repository.");
+        }
+        StringJoiner result = new StringJoiner(Tree.SEPARATOR);
+        for (Path name : root.relativize(path)) {
+            result.add(name.toString());
+        }
+        return result.toString();
     }
 
     /** Commits with given message and time.
@@ -103,6 +246,7 @@ public class Repository {
      * @param time time stamp
      */
     void commit(String msg, String time) {
+        lockStage();
         if (addMap.size() == 0 && toRemove.size() == 0) {
             System.out.println("No changes added to the commit.");
             throw new GitletException("No changes added to the commit.");
@@ -112,22 +256,19 @@ public class Repository {
             throw new GitletException("Please enter a commit message.");
         }
         Commit par = getCommit();
-        Commit current = new Commit(par, msg, time);
-        for (String key: addMap.keySet()) {
-            current.getMap().put(key, addMap.get(key));
-        }
+        HashMap<String, String> changes = new HashMap<>(addMap);
         for (String key: toRemove) {
-            current.getMap().remove(key);
+            changes.put(key, null);
+            INDEX.remove(key);
         }
-        File newCommit = new File(".gitlet//commits//" + current.getUID());
-        Utils.writeObject(newCommit, current);
-        branchHeads.put(Utils.readContentsAsString(HEAD),
-                            current.getUID());
+        Commit current = new Commit(par, msg, time,
+                Tree.update(par.getTree(), changes));
+        saveCommit(current);
+        setHead(curBranch, current.getUID());
         addMap.clear();
         toRemove.clear();
-        Utils.writeObject(BRANCHES, branchHeads);
-        Utils.writeObject(ADD, addMap);
-        Utils.writeObject(REMOVE, toRemove);
+        saveState();
+        saveIndex();
     }
 
     /** Removes a file.
@@ -135,43 +276,194 @@ public class Repository {
      */
     @SuppressWarnings({"unchecked", "deprecated"})
     void remove(String fileName) {
-        Commit curCommit = getCommit();
-        addMap = (HashMap) Utils.readObject(ADD, HashMap.class);
+        lockStage();
+        fileName = repoPath(fileName);
+        HashMap<String, String> tracked = getCommit().getMap();
         if (!addMap.containsKey(fileName)
-                    && !curCommit.getMap().containsKey(fileName)) {
+                    && !tracked.containsKey(fileName)) {
             System.out.println("No reason to remove the file.");
             throw new GitletException();
         }
         if (addMap.containsKey(fileName)) {
             addMap.remove(fileName);
         }
-        if (curCommit.getMap().containsKey(fileName)) {
+        if (tracked.containsKey(fileName)) {
             toRemove.add(fileName);
-            Utils.restrictedDelete(fileName);
+            WorkTree.delete(fileName);
+            INDEX.remove(fileName);
         }
-        Utils.writeObject(ADD, addMap);
-        Utils.writeObject(REMOVE, toRemove);
+        saveState();
+        saveIndex();
     }
 
     /**
-     * Returns a log for user.
+     * Returns a log for user: the current head and its first parents,
+     * leaving out the first SKIP and showing at most MAX, or all if MAX
+     * is negative. The commits skipped are never read.
+     * @param skip number of commits not shown
+     * @param max largest number of commits shown
      */
-    void log() {
-        for (Commit c = getCommit(); c != null; c = loadCommit(c.getP1())) {
-            c.log();
+    void log(int skip, int max) {
+        PrintWriter out = logWriter();
+        int k = graphIndex(branchHeads.get(curBranch));
+        for (; k >= 0 && skip > 0; k = GRAPH.parent1(k)) {
+            skip -= 1;
         }
-
+        for (; k >= 0 && max != 0; k = GRAPH.parent1(k), max -= 1) {
+            loadCommit(GRAPH.id(k)).log(out);
+        }
+        out.flush();
     }
 
     /**
-     * Performs gitlet globalLog operation.
+     * Performs gitlet globalLog operation, showing every commit newest
+     * first in the order of the commit graph, leaving out the first SKIP
+     * and showing at most MAX, or all if MAX is negative.
+     * @param skip number of commits not shown
+     * @param max largest number of commits shown
+     */
+    void globalLog(int skip, int max) {
+        PrintWriter out = logWriter();
+        for (int k = GRAPH.size() - 1 - skip; k >= 0 && max != 0;
+             k -= 1, max -= 1) {
+            loadCommit(GRAPH.id(k)).log(out);
+        }
+        out.flush();
+    }
+
+    /** Returns a writer to the standard output with a buffer large
+     * enough that a log is written in a few large writes.
+     * @return the writer, which must be flushed and not closed
+     */
+    private static PrintWriter logWriter() {
+        return new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), LOG_BUFFER), false);
+    }
+
+    /** Prints the differences between two versions of the files, as
+     * unified diffs in order of path. With two REVS, commits or
+     * branches, they are compared. Otherwise the old version is REVS[0]
+     * if given, or else the staging area, or the current commit if
+     * CACHED; the new version is the staging area if CACHED, or else the
+     * tracked files in the working tree. Files whose blobs are the same
+     * in both are skipped without being read, and files with a version
+     * of over DIFF_MAX bytes are only said to differ. The rest are
+     * diffed in parallel, in batches of up to DIFF_BYTES bytes of both
+     * versions, each batch written out in order before the next is
+     * read, so only a batch of files is held at once however many have
+     * changed and however large they are.
+     * @param cached whether the staging area is the new version
+     * @param revs the commits or branches to compare, if any
+     */
+    void diff(boolean cached, String... revs) {
+        HashMap<String, String> from, to;
+        if (revs.length == 2) {
+            from = revision(revs[0]).getMap();
+            to = revision(revs[1]).getMap();
+        } else {
+            HashMap<String, String> staged = staged();
+            if (revs.length == 1) {
+                from = revision(revs[0]).getMap();
+            } else {
+                from = cached ? getCommit().getMap() : staged;
+            }
+            to = cached ? staged : working(staged);
+        }
+        boolean work = revs.length < 2 && !cached;
+        TreeSet<String> paths = new TreeSet<>(from.keySet());
+        paths.addAll(to.keySet());
+        ArrayList<String> changed = new ArrayList<>();
+        for (String s: paths) {
+            if (!Objects.equals(from.get(s), to.get(s))) {
+                changed.add(s);
+            }
+        }
+        long[] sizes = new long[changed.size()];
+        WorkTree.forEach(changed.size(), k -> {
+            String s = changed.get(k);
+            long a = from.get(s) == null ? 0 : Blob.size(from.get(s));
+            long b = to.get(s) == null ? 0
+                : work ? new File(s).length() : Blob.size(to.get(s));
+            sizes[k] = a > DIFF_MAX || b > DIFF_MAX ? -1 : a + b;
+        });
+        BufferedOutputStream out =
+            new BufferedOutputStream(System.out, LOG_BUFFER);
+        try {
+            for (int i = 0, j; i < changed.size(); i = j) {
+                long bytes = Math.max(0, sizes[i]);
+                for (j = i + 1; j < changed.size()
+                         && bytes + Math.max(0, sizes[j]) <= DIFF_BYTES;
+                     j += 1) {
+                    bytes += Math.max(0, sizes[j]);
+                }
+                int first = i;
+                List<String> batch = changed.subList(i, j);
+                byte[][] diffs = new byte[batch.size()][];
+                WorkTree.forEach(batch.size(), k -> {
+                    String s = batch.get(k);
+                    ByteArrayOutputStream diff = new ByteArrayOutputStream();
+                    try {
+                        if (sizes[first + k] < 0) {
+                            Diff.differ(s, from.get(s) != null,
+                                        to.get(s) != null, diff);
+                        } else {
+                            byte[] b = to.get(s) == null ? null
+                                : work ? Utils.readContents(new File(s))
+                                : contentsOf(to.get(s));
+                            Diff.unified(s, from.get(s) == null ? null
+                                         : contentsOf(from.get(s)), b, diff);
+                        }
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                    diffs[k] = diff.toByteArray();
+                });
+                for (byte[] d : diffs) {
+                    out.write(d);
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the head of branch NAME, or else the commit whose UID is
+     * or begins with NAME.
+     * @param name a branch or commit
+     * @return the commit
      */
-    void globalLog() {
-        File[] listC = COMMITS.listFiles();
-        for (File file: listC) {
-            Commit c = loadCommit(file.getName());
-            c.log();
+    private Commit revision(String name) {
+        if (branchHeads.containsKey(name)) {
+            return loadCommit(branchHeads.get(name));
         }
+        return loadCommit(name);
+    }
+
+    /** Returns the files as the next commit would have them: those of
+     * the current commit with the staged changes made.
+     * @return blob UIDs by path
+     */
+    private HashMap<String, String> staged() {
+        HashMap<String, String> files = new HashMap<>(getCommit().getMap());
+        files.putAll(addMap);
+        files.keySet().removeAll(toRemove);
+        return files;
+    }
+
+    /** Returns the blob UIDs of the files of TRACKED that are in the
+     * working tree, by path, hashing them in parallel.
+     * @param tracked the files tracked
+     * @return blob UIDs by path
+     */
+    private HashMap<String, String> working(Map<String, String> tracked) {
+        ArrayList<String> present = new ArrayList<>();
+        for (String s: tracked.keySet()) {
+            if (new File(s).isFile()) {
+                present.add(s);
+            }
+        }
+        return new HashMap<>(WorkTree.hash(present, INDEX));
     }
 
     /** Performs status uperation.
@@ -204,20 +496,23 @@ public class Repository {
             System.out.println(multiUse.poll());
         }
         System.out.println("\n=== Modifications Not Staged For Commit ===");
-        for (String k: getCommit().getMap().keySet()) {
-            File inCWD = new File(k);
+        HashMap<String, String> tracked = getCommit().getMap();
+        ArrayList<String> present = new ArrayList<>();
+        for (String k: tracked.keySet()) {
             if (!addMap.containsKey(k) && !toRemove.contains(k)) {
-                if (inCWD.exists() && !addMap.containsKey(k)) {
-                    Blob b = new Blob(inCWD);
-                    if (!b.getUID().equals(getCommit().getMap().get(k))
-                            && !toRemove.contains(k)) {
-                        multiUse.offer(k + " (modified)");
-                    }
+                if (new File(k).exists()) {
+                    present.add(k);
                 } else {
                     multiUse.offer(k + " (deleted)");
                 }
             }
         }
+        for (Map.Entry<String, String> e
+                 : WorkTree.hash(present, INDEX).entrySet()) {
+            if (!e.getValue().equals(tracked.get(e.getKey()))) {
+                multiUse.offer(e.getKey() + " (modified)");
+            }
+        }
         while (!multiUse.isEmpty()) {
             System.out.println(multiUse.poll());
         }
@@ -227,6 +522,7 @@ public class Repository {
             System.out.println(multiUse.poll());
         }
         System.out.println();
+        saveIndex();
     }
 
     /** Returns removed files for status.
@@ -242,12 +538,9 @@ public class Repository {
      * @param multiUse the pq
      */
     private void untracked(PriorityQueue<String> multiUse) {
-        String curDir = System.getProperty("user.dir");
-        File curD = new File(curDir);
-        for (File x: curD.listFiles()) {
-            String s = x.getName();
-            if (!s.equals(GITLET.getName())
-                    && !getCommit().getMap().containsKey(s)
+        HashMap<String, String> tracked = getCommit().getMap();
+        for (String s: WorkTree.files()) {
+            if (!tracked.containsKey(s)
                     && !addMap.containsKey(s) && !toRemove.contains(s)) {
                 multiUse.offer(s);
             }
@@ -259,15 +552,15 @@ public class Repository {
      * @param fileName Name of file
      */
     void checkout(String fileName) {
-        Commit c = getCommit();
-        if (!c.getMap().containsKey(fileName)) {
+        fileName = repoPath(fileName);
+        HashMap<String, String> files = getCommit().getMap();
+        if (!files.containsKey(fileName)) {
             System.out.println("File does not exist in the commit.");
             throw new GitletException("File does not exist in the commit.");
         }
-        Blob b = loadBlob(c.getMap().get(fileName));
-        byte[] content = b.getContents();
-        File toChange = new File(fileName);
-        Utils.writeContents(toChange, content);
+        checkBlocked(fileName);
+        checkoutFile(fileName, files.get(fileName));
+        saveIndex();
     }
 
     /** Checks out a file from specified commit.
@@ -275,15 +568,52 @@ public class Repository {
      * @param fileName Name of file
      */
     void checkout(String cID, String fileName) {
-        Commit toUse = loadCommit(cID);
-        if (!toUse.getMap().containsKey(fileName)) {
+        fileName = repoPath(fileName);
+        HashMap<String, String> files = loadCommit(cID).getMap();
+        if (!files.containsKey(fileName)) {
             System.out.println("File does not exist in that commit.");
             throw new GitletException("File does not exist in that commit.");
         }
-        Blob b = loadBlob(toUse.getMap().get(fileName));
-        byte[] content = b.getContents();
-        File toChange = new File(fileName);
-        Utils.writeContents(toChange, content);
+        checkBlocked(fileName);
+        checkoutFile(fileName, files.get(fileName));
+        saveIndex();
+    }
+
+    /** Throw exception if a file or directory in the working tree
+     * keeps the file NAME from being written.
+     * @param name Name of file
+     */
+    private void checkBlocked(String name) {
+        if (WorkTree.blocked(name) != null) {
+            untrackedInWay();
+        }
+    }
+
+    /** Throw exception if checking out commit TO in place of commit FROM
+     * would overwrite or delete an untracked file: one where a file of TO
+     * goes, where a directory of TO goes, or in a directory where a file
+     * of TO goes.
+     * @param from the commit checked out now
+     * @param to the commit to check out
+     */
+    private void checkUntracked(Commit from, Commit to) {
+        HashMap<String, String> tracked = from.getMap();
+        ArrayList<String> untracked = new ArrayList<>();
+        for (String s: WorkTree.files()) {
+            if (!tracked.containsKey(s)) {
+                untracked.add(s);
+            }
+        }
+        if (WorkTree.inTheWay(untracked, to.getMap().keySet()) != null) {
+            untrackedInWay();
+        }
+    }
+
+    /** Says that an untracked file is in the way and ends the command. */
+    private static void untrackedInWay() {
+        System.out.println("There is an untracked file in the way; "
+                + "delete it, or add and commit it first.");
+        throw new GitletException();
     }
 
     /** Checks out a specific branch.
@@ -292,6 +622,7 @@ public class Repository {
      * @throws IOException
      */
     void checkout(String branchName, int l) throws IOException {
+        lockStage();
         if (!branchHeads.containsKey(branchName)) {
             System.out.println("No such branch exists.");
             throw new GitletException("No such branch exists");
@@ -301,47 +632,40 @@ public class Repository {
         }
         Commit comToChange = getCommit();
         Commit newCom = loadCommit(branchHeads.get(branchName));
-        String curDir = System.getProperty("user.dir");
-        File curD = new File(curDir);
-        for (File x: curD.listFiles()) {
-            String s = x.getName();
-            if (!comToChange.getMap().containsKey(s)
-                    && newCom.getMap().containsKey(s)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                throw new GitletException();
-            }
-        }
-        for (String s: comToChange.getMap().keySet()) {
-            Utils.restrictedDelete(s);
-        }
-        for (String s: newCom.getMap().keySet()) {
-            File oldBlob = new File(".gitlet//blobs//"
-                    + newCom.getMap().get(s));
-            File x = new File(s);
-            x.createNewFile();
-            Blob b = loadBlob(newCom.getMap().get(s));
-            Utils.writeContents(x, b.getContents());
-        }
+        checkUntracked(comToChange, newCom);
+        switchTo(comToChange, newCom, new HashSet<>());
         addMap.clear();
         toRemove.clear();
-        Utils.writeObject(ADD, addMap);
-        Utils.writeObject(REMOVE, toRemove);
-        Utils.writeContents(HEAD, branchName);
+        curBranch = branchName;
+        saveState();
+        saveIndex();
     }
 
     /** Performs gitlet find operation.
      * @param msg Commits msg to find.
      */
     void findCWMsg(String msg) {
-        File[] listC = COMMITS.listFiles();
-        ArrayList<String> x = new ArrayList<>();
-        for (File file: listC) {
-            Commit c = loadCommit(file.getName());
-            if (c.getLogMsg().equals(msg)) {
-                x.add(c.getUID());
-            }
-        }
+        printFound(messages().exact(msg));
+    }
+
+    /** Prints the commits whose messages begin with PREFIX.
+     * @param prefix start of the messages to find.
+     */
+    void findPrefix(String prefix) {
+        printFound(messages().prefix(prefix));
+    }
+
+    /** Prints the commits whose messages contain TEXT.
+     * @param text part of the messages to find.
+     */
+    void findContaining(String text) {
+        printFound(messages().containing(text));
+    }
+
+    /** Prints the UIDs X of the commits found, one to a line.
+     * @param x UIDs of the commits.
+     */
+    private void printFound(List<String> x) {
         if (x.size() == 0) {
             System.out.println("Found no commit with that message");
             throw new GitletException();
@@ -361,8 +685,8 @@ public class Repository {
                     + "name already exists.");
         }
         Commit curHead = getCommit();
-        branchHeads.put(bName, curHead.getUID());
-        Utils.writeObject(BRANCHES, branchHeads);
+        setHead(bName, curHead.getUID());
+        saveState();
     }
 
     /** Removes reference to specific branch.
@@ -378,8 +702,8 @@ public class Repository {
             System.out.println("Cannot remove the current branch.");
             throw new GitletException("Cannot remove the current branch.");
         }
-        branchHeads.remove(bName);
-        Utils.writeObject(BRANCHES, branchHeads);
+        setHead(bName, null);
+        saveState();
     }
 
     /** Reset Essentially checks out a commit.
@@ -387,48 +711,27 @@ public class Repository {
      * @throws IOException
      */
     void reset(String cName) throws IOException {
+        lockStage();
         Commit toUse = loadCommit(cName);
         Commit comToChange = getCommit();
-        String curDir = System.getProperty("user.dir");
-        File curD = new File(curDir);
-        for (File x: curD.listFiles()) {
-            String s = x.getName();
-            if (!comToChange.getMap().containsKey(s)
-                    && toUse.getMap().containsKey(s)) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                throw new GitletException();
-            }
-        }
-        for (String s: comToChange.getMap().keySet()) {
-            Utils.restrictedDelete(s);
-        }
-        for (String s: addMap.keySet()) {
-            Utils.restrictedDelete(s);
-        }
-        for (String s: toRemove) {
-            Utils.restrictedDelete(s);
-        }
-        for (String s: toUse.getMap().keySet()) {
-            File x = new File(s);
-            x.createNewFile();
-            Blob b = loadBlob(toUse.getMap().get(s));
-            Utils.writeContents(x, b.getContents());
-        }
+        checkUntracked(comToChange, toUse);
+        switchTo(comToChange, toUse, addMap.keySet());
         addMap.clear();
         toRemove.clear();
-        branchHeads.replace(curBranch, toUse.getUID());
-        Utils.writeObject(ADD, addMap);
-        Utils.writeObject(REMOVE, toRemove);
-        Utils.writeObject(BRANCHES, branchHeads);
+        setHead(curBranch, toUse.getUID());
+        saveState();
+        saveIndex();
     }
 
 
-    /** Performs the merge operation.
+    /** Performs the merge operation. What happens to each file is first
+     * planned from the three commits' files, and the plan is then
+     * carried out on the working tree.
      * @param bName Name of branch to merge into current
      * @throws IOException
      */
     void merge(String bName) throws IOException {
+        lockStage();
         checkForBadMerge(bName);
         Commit c1 = getCommit();
         Commit c2 = loadCommit(branchHeads.get(bName));
@@ -437,9 +740,7 @@ public class Repository {
         HashMap<String, String> c1map = c1.getMap();
         HashMap<String, String> c2map = c2.getMap();
         HashMap<String, String> splitmap = splitPoint.getMap();
-        String curDir = System.getProperty("user.dir");
-        File curD = new File(curDir);
-        untrackedMerge(curD, bName);
+        untrackedMerge(c1map, c2map);
         if (splitPoint.getUID().equals(c1.getUID())) {
             checkout(bName, 0);
             System.out.println("Current branch fast-forwarded");
@@ -449,38 +750,8 @@ public class Repository {
                     + "of the current branch.");
             throw new GitletException();
         } else {
-            conflict = mergeOp1(splitmap, c1map, c2map, c2);
-            for (String s: c2map.keySet()) {
-                if (!splitmap.containsKey(s) && !c1map.containsKey(s)) {
-                    checkout(c2.getUID(), s);
-                    addMap.put(s, c2map.get(s));
-                } else if (!splitmap.containsKey(s) && c1map.containsKey(s)
-                            && !c2map.get(s).equals(c1map.get(s)))    {
-                    String toWrite = "<<<<<<< HEAD\n"
-                            + loadBlob(c1.getMap().get(s)).getStringCont()
-                            + "=======\n"
-                            + loadBlob(c2.getMap().get(s)).getStringCont()
-                            + ">>>>>>>\n";
-                    File xFile = new File(s);
-                    xFile.createNewFile();
-                    Utils.writeContents(xFile, toWrite);
-                    conflict = true;
-                }
-            }
-            for (String s: c1map.keySet()) {
-                if (splitmap.containsKey(s) && !c2map.containsKey(s)) {
-                    if (!splitmap.get(s).equals(c1map.get(s))) {
-                        conflict = true;
-                        String toWrite = "<<<<<<< HEAD\n"
-                                + loadBlob(c1map.get(s)).getStringCont()
-                                + "=======\n"
-                                + "" + ">>>>>>>\n";
-                        File xFile = new File(s);
-                        xFile.createNewFile();
-                        Utils.writeContents(xFile, toWrite);
-                    }
-                }
-            }
+            conflict = applyMerge(Merge.plan(splitmap, c1map, c2map),
+                                  splitmap, c1map, c2map);
         }
         String msg = String.format("Merged %s into %s.", bName, curBranch);
         mergeCommit(msg, c1.getUID(), c2.getUID());
@@ -489,72 +760,215 @@ public class Repository {
         }
     }
 
-    /** Helper takes care of first set of merge ops.
-     * @param splitmap map of splitpoint
-     * @param c1map map of c1
-     * @param c2map map of c2
-     * @param c2 commit 2
-     * @return
+    /** Merges the given branch into the current one in the object store
+     * alone: the working tree, the staging area and the branches are
+     * left as they are, so there need not be a checkout. Prints the ID
+     * of the commit the merge results in, which reset can then check
+     * out, followed by each file with a conflict and its kind.
+     * @param bName Name of branch to merge into current
      */
-    private boolean mergeOp1(HashMap<String, String> splitmap,
-                             HashMap<String, String> c1map,
-                             HashMap<String, String> c2map,
-                             Commit c2) throws IOException {
-        boolean conflict = false;
-        for (String s: splitmap.keySet()) {
-            if (c1map.containsKey(s) && c2map.containsKey(s)) {
-                if (c1map.get(s).equals(splitmap.get(s))
-                        && !c2map.get(s).equals(c1map.get(s))) {
-                    checkout(c2.getUID(), s);
-                } else if (!c1map.get(s).equals(splitmap.get(s))
-                        && !c1map.get(s).equals(c2map.get(s))
-                        && !c2map.get(s).equals(splitmap.get(s))) {
-                    String toWrite = "<<<<<<< HEAD\n"
-                            + loadBlob(c1map.get(s)).
-                            getStringCont()
-                            + "=======\n"
-                            + loadBlob(c2map.
-                            get(s)).getStringCont()
-                            + ">>>>>>>\n";
-                    File nFile = new File(s);
-                    nFile.createNewFile();
-                    Utils.writeContents(nFile, toWrite);
-                    conflict = true;
-                }
-            } else if (!c2map.containsKey(s) && c1map.containsKey(s)) {
-                if (c1map.get(s).equals(splitmap.get(s))) {
-                    remove(s);
-                } else if (!c1map.get(s).equals(splitmap.get(s))) {
-                    String str = "<<<<<<< HEAD\n"
-                            + loadBlob(c1map.get(s)).
-                            getStringCont()
-                            + "=======\n" + ""
-                            + ">>>>>>>\n";
-                    File cFile = new File(s);
-                    Utils.writeContents(cFile, str);
-                    conflict = true;
-                }
+    void mergeInMemory(String bName) {
+        checkMergeBranch(bName);
+        Commit c1 = getCommit();
+        Commit c2 = loadCommit(branchHeads.get(bName));
+        Commit splitPoint = cAncestor(c1, c2);
+        if (splitPoint.getUID().equals(c2.getUID())) {
+            System.out.println("Given branch is an ancestor "
+                    + "of the current branch.");
+            throw new GitletException();
+        }
+        TreeMap<String, Merge.Action> conflicts = new TreeMap<>();
+        String result = c2.getUID();
+        if (!splitPoint.getUID().equals(c1.getUID())) {
+            String msg = String.format("Merged %s into %s.", bName,
+                                       curBranch);
+            result = mergeInStore(msg, c1, c2, splitPoint, conflicts);
+        }
+        System.out.println(result);
+        for (Map.Entry<String, Merge.Action> e : conflicts.entrySet()) {
+            System.out.printf("CONFLICT (%s): %s%n",
+                    e.getValue() == Merge.Action.MERGE
+                        ? "content" : "modify/delete", e.getKey());
+        }
+        if (!conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Saves and returns the UID of the commit with message MSG merging
+     * commit THEIRS into commit OURS, both made from commit BASE. Its
+     * tree is the tree of OURS with the plan's changes made to it; only
+     * the files merged line by line get new blobs, merged in parallel.
+     * Each file with a conflict is added to CONFLICTS, with what was
+     * done to it; its blob holds the conflict between markers, as merge
+     * would have written to the file.
+     * @param msg message of the commit
+     * @param ours the current branch's commit
+     * @param theirs the given branch's commit
+     * @param base the split point
+     * @param conflicts where the files with conflicts go
+     * @return UID of the merge commit
+     */
+    private String mergeInStore(String msg, Commit ours, Commit theirs,
+                                Commit base,
+                                Map<String, Merge.Action> conflicts) {
+        HashMap<String, String> b = base.getMap();
+        HashMap<String, String> o = ours.getMap();
+        HashMap<String, String> t = theirs.getMap();
+        TreeMap<String, Merge.Action> plan = Merge.plan(b, o, t);
+        HashMap<String, String> changes = new HashMap<>();
+        ArrayList<String> merges = new ArrayList<>();
+        for (Map.Entry<String, Merge.Action> e : plan.entrySet()) {
+            String s = e.getKey();
+            if (e.getValue() == Merge.Action.DELETE
+                    || e.getValue() == Merge.Action.TAKE_THEIRS) {
+                changes.put(s, t.get(s));
+            } else {
+                merges.add(s);
+            }
+        }
+        String[] blobs = new String[merges.size()];
+        boolean[] conflicted = new boolean[merges.size()];
+        WorkTree.forEach(merges.size(), k -> {
+            String s = merges.get(k);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                conflicted[k] = mergeBlobs(b.get(s), o.get(s), t.get(s), out);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            blobs[k] = Blob.store(out.toByteArray(), o.get(s)).getUID();
+        });
+        for (int k = 0; k < blobs.length; k += 1) {
+            changes.put(merges.get(k), blobs[k]);
+            if (conflicted[k]) {
+                conflicts.put(merges.get(k), plan.get(merges.get(k)));
+            }
+        }
+        Commit merged = new Commit(msg, now(), ours.getUID(),
+                theirs.getUID(), Tree.update(ours.getTree(), changes));
+        saveCommit(merged);
+        return merged.getUID();
+    }
+
+    /** Returns the time now, as commits record it.
+     * @return the time stamp
+     */
+    private static String now() {
+        return new SimpleDateFormat(Main.DATE_FORMAT).format(new Date());
+    }
 
-            } else if (!c1map.containsKey(s) && c2map.containsKey(s)) {
-                if (!c2map.get(s).equals(splitmap.get(s))) {
-                    String str = "<<<<<<< HEAD\n" + ""
-                            + "=======\n"
-                            + loadBlob(c2map.get(s)).
-                            getStringCont()
-                            + ">>>>>>>\n";
-                    File cFile = new File(s);
-                    Utils.writeContents(cFile, str);
-                    conflict = true;
+    /** Carries out PLAN, a merge of the files THEIRS into the files OURS,
+     * both made from the files BASE. Files removed are staged for
+     * removal and deleted first; the files taken from the given branch
+     * and the files merged are then all written in parallel.
+     * @param plan what is done to each file changed
+     * @param base blobs at the split point
+     * @param ours blobs in the current branch
+     * @param theirs blobs in the given branch
+     * @return true iff there is a conflict
+     */
+    private boolean applyMerge(Map<String, Merge.Action> plan,
+                               Map<String, String> base,
+                               Map<String, String> ours,
+                               Map<String, String> theirs) {
+        ArrayList<String> writes = new ArrayList<>();
+        for (Map.Entry<String, Merge.Action> e : plan.entrySet()) {
+            String s = e.getKey();
+            if (e.getValue() == Merge.Action.DELETE) {
+                toRemove.add(s);
+                WorkTree.delete(s);
+                INDEX.remove(s);
+            } else {
+                if (e.getValue() == Merge.Action.TAKE_THEIRS) {
+                    addMap.put(s, theirs.get(s));
                 }
+                writes.add(s);
             }
         }
-        return conflict;
+        boolean[] conflicts = new boolean[writes.size()];
+        WorkTree.forEach(writes.size(), k -> {
+            String s = writes.get(k);
+            if (plan.get(s) == Merge.Action.TAKE_THEIRS) {
+                checkoutFile(s, theirs.get(s));
+            } else {
+                conflicts[k] = mergeFile(s, base.get(s), ours.get(s),
+                                         theirs.get(s));
+            }
+        });
+        for (boolean c : conflicts) {
+            if (c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes to the working file NAME the merge, line by line, of the
+     * blobs OURS and THEIRS, which were both made from the blob BASE. A
+     * blob is null where the file is missing. If one side removed the
+     * file, the whole of the other is written as a conflict. The result
+     * is streamed to the file rather than built in memory.
+     * @param name the file
+     * @param base its blob at the split point
+     * @param ours its blob in the current branch
+     * @param theirs its blob in the given branch
+     * @return true iff there is a conflict
+     */
+    private boolean mergeFile(String name, String base, String ours,
+                              String theirs) {
+        WorkTree.prepare(name);
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(new File(name).toPath()))) {
+            return mergeBlobs(base, ours, theirs, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes to OUT the merge, line by line, of the blobs OURS and
+     * THEIRS, which were both made from the blob BASE, as mergeFile
+     * does.
+     * @param base its blob at the split point
+     * @param ours its blob in the current branch
+     * @param theirs its blob in the given branch
+     * @param out where the merge goes
+     * @return true iff there is a conflict
+     * @throws IOException
+     */
+    private boolean mergeBlobs(String base, String ours, String theirs,
+                               OutputStream out) throws IOException {
+        if (ours == null || theirs == null) {
+            Merge.conflict(contentsOf(ours), contentsOf(theirs), out);
+            return true;
+        }
+        return Merge.merge(contentsOf(base), contentsOf(ours),
+                           contentsOf(theirs), out);
+    }
+
+    /** Returns the contents of blob UID, or nothing if UID is null.
+     * @param uid the blob
+     * @return its contents
+     */
+    private byte[] contentsOf(String uid) {
+        return uid == null ? new byte[0] : loadBlob(uid).getContents();
     }
 
     /** Throw exception if improper merge.
      * @param bName Branch to merge.
      */
     private void checkForBadMerge(String bName) {
+        checkMergeBranch(bName);
+        if (!addMap.isEmpty() || !toRemove.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            throw new GitletException();
+        }
+    }
+
+    /** Throw exception if the branch to merge is not another branch.
+     * @param bName Branch to merge.
+     */
+    private void checkMergeBranch(String bName) {
         if (bName.equals(curBranch)) {
             System.out.println("Cannot merge a branch with itself.");
             throw new GitletException();
@@ -562,38 +976,38 @@ public class Repository {
             System.out.println("A branch with that name does not exist.");
             throw new GitletException();
         }
-        if (!addMap.isEmpty() || !toRemove.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            throw new GitletException();
-        }
     }
 
-    /** Check if files are untracked for merge.
-     * @param curD CWD
-     * @param bName branch merge.
+    /** Check if files are untracked for merge: an untracked file that
+     * writing the given branch's files would overwrite or delete, at one
+     * of their paths, where one of their directories goes or in a
+     * directory where one of them goes. An untracked file that already
+     * holds the given branch's version is not in the way.
+     * @param c1map files of the current commit
+     * @param c2map files of the given branch's commit
      */
-    private void untrackedMerge(File curD, String bName) {
-        Commit c1 = getCommit();
-        Commit c2 = loadCommit(branchHeads.get(bName));
-        Commit splitPoint = cAncestor(c1, c2);
-        HashMap<String, String> c1map = c1.getMap();
-        HashMap<String, String> c2map = c2.getMap();
-        HashMap<String, String> splitmap = splitPoint.getMap();
-        for (File x: curD.listFiles()) {
-            if (!c1map.containsKey(x.getName())) {
-                if (c2map.containsKey(x.getName())) {
-                    File fileAsCurIS = new File(x.getName());
-                    String contInDie = Utils.readContentsAsString(fileAsCurIS);
-                    if (!loadBlob(c2map.get(x.getName())).
-                            getStringCont().equals(contInDie)) {
-                        System.out.println("There is an untracked file "
-                                + "in the way; "
-                                + "delete it, or add and commit it first.");
-                        throw new GitletException();
-                    }
-                }
+    private void untrackedMerge(HashMap<String, String> c1map,
+                                HashMap<String, String> c2map) {
+        ArrayList<String> untracked = new ArrayList<>();
+        ArrayList<String> same = new ArrayList<>();
+        for (String s: WorkTree.files()) {
+            if (c1map.containsKey(s)) {
+                continue;
+            } else if (c2map.containsKey(s)) {
+                same.add(s);
+            } else {
+                untracked.add(s);
             }
         }
+        for (Map.Entry<String, String> e
+                 : WorkTree.hash(same, INDEX).entrySet()) {
+            if (!c2map.get(e.getKey()).equals(e.getValue())) {
+                untracked.add(e.getKey());
+            }
+        }
+        if (WorkTree.inTheWay(untracked, c2map.keySet()) != null) {
+            untrackedInWay();
+        }
     }
 
 
@@ -603,35 +1017,25 @@ public class Repository {
      * @param p2 Parent 2
      */
     void mergeCommit(String msg, String p1, String p2) {
-        SimpleDateFormat f = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-        Date d = new Date();
-        Commit current = new Commit(msg, f.format(d), p1, p2);
-        for (String key: addMap.keySet()) {
-            current.getMap().put(key, addMap.get(key));
-        }
+        HashMap<String, String> files = new HashMap<>(addMap);
         for (String key: toRemove) {
-            current.getMap().remove(key);
+            files.remove(key);
         }
-        String curDir = System.getProperty("user.dir");
-        File curD = new File(curDir);
-        for (File x: curD.listFiles()) {
-            if (!x.getName().equals(".gitlet")) {
-                Blob b = new Blob(x);
-                current.getMap().put(x.getName(), b.getUID());
-            }
-        }
-        File newCommit = new File(".gitlet//commits//" + current.getUID());
-        Utils.writeObject(newCommit, current);
-        branchHeads.put(Utils.readContentsAsString(HEAD),
-                current.getUID());
+        files.putAll(WorkTree.hash(WorkTree.files(), INDEX));
+        Commit current = new Commit(msg, now(), p1, p2, Tree.write(files));
+        saveCommit(current);
+        setHead(curBranch, current.getUID());
         addMap.clear();
         toRemove.clear();
-        Utils.writeObject(BRANCHES, branchHeads);
-        Utils.writeObject(ADD, addMap);
-        Utils.writeObject(REMOVE, toRemove);
+        saveState();
+        saveIndex();
     }
 
-    /** Finds split point for a merge operation.
+    /** Finds split point for a merge operation. Of the best common
+     * ancestors of CUR and OTHER, of which a criss-cross history can
+     * have several, this is the one reached first from CUR in
+     * breadth-first order. Both walks use the commit graph rather than
+     * commit objects.
      * @param cur Represents Head commit of cur branch.
      * @param other Represents Head of branch to merge into cur.
      * @return
@@ -643,46 +1047,25 @@ public class Repository {
         if (cur == other) {
             return cur;
         }
-        HashSet<String> collisions = new HashSet<>();
-        LinkedList<Commit> q = new LinkedList<Commit>();
-        q.add(other);
-        while (!q.isEmpty()) {
-            Commit top = q.poll();
-            collisions.add(top.getUID());
-            for (String s: top.getParents()) {
-                Commit p = loadCommit(s);
-                q.add(p);
-            }
-        }
-        q.add(cur);
-        while (!q.isEmpty()) {
-            Commit top = q.poll();
-            if (collisions.contains(top.getUID())) {
-                return top;
-            }
-            if (top.getP1() != null) {
-                Commit p = loadCommit(top.getP1());
-                q.add(p);
-            }
-            if (top.getP2() != null) {
-                Commit p = loadCommit(top.getP2());
-                q.add(p);
-            }
-        }
-        return null;
+        int c = graphIndex(cur.getUID());
+        int o = graphIndex(other.getUID());
+        int[] bases = GRAPH.mergeBases(c, o);
+        int best = bases.length == 1 ? bases[0] : GRAPH.nearest(c, bases);
+        return best < 0 ? null : loadCommit(GRAPH.id(best));
     }
 
     /** Loads current head.
      * @return
      */
     Commit getCommit() {
-        File headCommit = new File(".gitlet//commits//"
-                        + branchHeads.get(curBranch));
-        Commit par = (Commit) Utils.readObject(headCommit, Commit.class);
-        return par;
+        return loadCommit(branchHeads.get(curBranch));
     }
 
-    /** Loads a commit given UID.
+    /** Loads a commit given UID, which may be abbreviated as long as
+     * only one commit begins with it. Commits
+     * never change once stored, so each is decoded at most once per
+     * process and then served from COMMIT_CACHE; callers must not
+     * modify the commits it returns.
      * @param uid SHA1 for commit.
      * @return
      */
@@ -690,18 +1073,27 @@ public class Repository {
         if (uid == null) {
             return null;
         }
-        Commit c = null;
-        int n = uid.length();
-        File commit = new File(".gitlet//commits//" + uid);
-        if (commit.exists()) {
-            c = Utils.readObject(commit, Commit.class);
-        } else {
-            for (File x: COMMITS.listFiles()) {
-                if (x.getName().substring(0, n).equals(uid)) {
-                    c = Utils.readObject(x, Commit.class);
-                }
+        Commit c = COMMIT_CACHE.get(uid);
+        if (c != null) {
+            return c;
+        }
+        String id = uid;
+        if (!COMMIT_STORE.contains(id)) {
+            List<String> matches = COMMIT_STORE.withPrefix(uid);
+            if (matches.size() > 1) {
+                System.out.println("Commit id " + uid + " is ambiguous.");
+                throw new GitletException("Ambiguous commit id.");
+            } else if (matches.size() == 1) {
+                id = matches.get(0);
+            }
+            c = COMMIT_CACHE.get(id);
+        }
+        if (c == null) {
+            byte[] data = COMMIT_STORE.read(id);
+            if (data != null) {
+                c = Commit.decode(data);
+                COMMIT_CACHE.put(id, c);
             }
-
         }
         if (c == null) {
             System.out.println("No commit with that id exists.");
@@ -710,17 +1102,401 @@ public class Repository {
         return c;
     }
 
+    /** Makes the working tree, which holds commit FROM with changes,
+     * hold commit TO instead, also replacing the files STAGED. Only the
+     * paths whose blobs differ between the two commits, and tracked
+     * files that were changed or deleted in the working tree, are
+     * touched; identical subtrees are not even read. Prints how much
+     * was written if the gitlet.verbose property is set.
+     * @param from the commit checked out now
+     * @param to the commit to check out
+     * @param staged paths staged for addition
+     */
+    private void switchTo(Commit from, Commit to, Set<String> staged) {
+        TreeMap<String, String> changes = new TreeMap<>();
+        Tree.diff(from.getTree(), to.getTree(), "", changes);
+        HashMap<String, String> tracked = from.getMap();
+        ArrayList<String> present = new ArrayList<>();
+        for (String s: tracked.keySet()) {
+            if (changes.containsKey(s)) {
+                continue;
+            } else if (new File(s).isFile()) {
+                present.add(s);
+            } else {
+                changes.put(s, tracked.get(s));
+            }
+        }
+        for (Map.Entry<String, String> e
+                 : WorkTree.hash(present, INDEX).entrySet()) {
+            if (!e.getValue().equals(tracked.get(e.getKey()))) {
+                changes.put(e.getKey(), tracked.get(e.getKey()));
+            }
+        }
+        HashMap<String, String> files = staged.isEmpty() ? null
+            : to.getMap();
+        for (String s: staged) {
+            if (!changes.containsKey(s)) {
+                changes.put(s, files.get(s));
+            }
+        }
+        long bytes = WorkTree.apply(changes, INDEX);
+        if (Boolean.getBoolean("gitlet.verbose")) {
+            System.err.printf("Updated %d files, wrote %d bytes.%n",
+                    changes.size(), bytes);
+        }
+    }
+
+    /** Writes blob UID to the working-tree file NAME and records it in
+     * the stat index.
+     * @param name Name of file
+     * @param uid SHA1 for blob.
+     */
+    private void checkoutFile(String name, String uid) {
+        File file = new File(name);
+        WorkTree.prepare(name);
+        loadBlob(uid).writeTo(file);
+        INDEX.record(file, uid);
+    }
+
     /** Can load a blob given UID.
      * @param uid SHA1 for blob.
      * @return
      */
     Blob loadBlob(String uid) {
-        File blob = new File(".gitlet//blobs//" + uid);
-        Blob b = Utils.readObject(blob, Blob.class);
-        return b;
+        return new Blob(uid);
+    }
+
+    /** Writes what this process has changed of the branch heads and,
+     * if it holds the lock on the staging area, the current branch and
+     * the staging area to their files as one update through the journal.
+     * Each branch head changed is compared with and swapped for the one
+     * read before it was changed, under a lock held only for the update,
+     * so processes changing different branches do not undo each other's
+     * changes, and a branch moved by another process is not overwritten.
+     */
+    @SuppressWarnings("unchecked")
+    private void saveState() {
+        if (_deferred) {
+            _unsaved = true;
+            return;
+        }
+        try (LockFile lock = LockFile.acquire(BRANCHES)) {
+            LinkedHashMap<File, byte[]> state = new LinkedHashMap<>();
+            if (!_expected.isEmpty()) {
+                HashMap<String, String> heads = BRANCHES.length() == 0
+                    ? new HashMap<>()
+                    : Utils.readObject(BRANCHES, HashMap.class);
+                for (Map.Entry<String, String> e: _expected.entrySet()) {
+                    String b = e.getKey();
+                    if (!Objects.equals(heads.get(b), e.getValue())) {
+                        System.out.println("Branch " + b + " was changed by"
+                                + " another process.");
+                        throw new GitletException("Branch changed.");
+                    }
+                    if (branchHeads.containsKey(b)) {
+                        heads.put(b, branchHeads.get(b));
+                    } else {
+                        heads.remove(b);
+                    }
+                }
+                _expected.clear();
+                branchHeads = heads;
+                state.put(BRANCHES, Utils.serialize(heads));
+            }
+            if (_stageLock != null) {
+                state.put(HEAD, curBranch.getBytes(StandardCharsets.UTF_8));
+                state.put(ADD, Utils.serialize(addMap));
+                state.put(REMOVE, Utils.serialize(toRemove));
+            }
+            if (!state.isEmpty()) {
+                lock.ensureHeld();
+                COMMIT_STORE.sync();
+                TREE_STORE.sync();
+                BLOB_STORE.sync();
+                JOURNAL.commit(state);
+            }
+        }
+    }
+
+    /** Writes the stat index to its file, unless saves are deferred.
+     */
+    private void saveIndex() {
+        if (!_deferred) {
+            INDEX.save();
+        }
     }
 
+    /** Holds back writing the branches, the staging area and the stat
+     * index until flush is called, so that a run of commands against
+     * this repository writes each of them once rather than once per
+     * command. Objects are still written as they are made.
+     */
+    void defer() {
+        _deferred = true;
+    }
 
+    /** Remembers the current branch, the branch heads and the staging
+     * area as they are, so that rollback can return to them. Used while
+     * saves are deferred, before each command of a batch.
+     */
+    void checkpoint() {
+        _checkpoint = new Checkpoint();
+    }
+
+    /** Returns the current branch, the branch heads and the staging area
+     * to what they were at the last checkpoint, discarding the unsaved
+     * changes of a command that failed part way through. If that command
+     * took the lock on the staging area, the staging area is read again
+     * as taking it would have done.
+     */
+    void rollback() {
+        Checkpoint c = _checkpoint;
+        curBranch = c._branch;
+        branchHeads = new HashMap<>(c._heads);
+        _expected.clear();
+        _expected.putAll(c._expected);
+        addMap = new HashMap<>(c._add);
+        toRemove = new HashSet<>(c._remove);
+        _unsaved = c._unsaved;
+        if (!c._locked && _stageLock != null) {
+            readState();
+        }
+    }
+
+    /** Writes whatever state has changed since defer was called, and
+     * saves immediately again from then on.
+     */
+    void flush() {
+        _deferred = false;
+        try {
+            if (_unsaved) {
+                _unsaved = false;
+                saveState();
+            }
+            INDEX.save();
+        } finally {
+            unlock();
+        }
+    }
+
+    /** Makes the caches of what is on disk that may have been changed
+     * by another process read it again. Objects never change, so the
+     * caches of decoded objects are kept.
+     */
+    static void invalidateCaches() {
+        COMMIT_STORE.invalidate();
+        BLOB_STORE.invalidate();
+        TREE_STORE.invalidate();
+        GRAPH.invalidate();
+        MESSAGES.invalidate();
+        INDEX.invalidate();
+    }
+
+    /** Writes commit C to the object store and the commit graph.
+     * @param c the commit
+     */
+    private void saveCommit(Commit c) {
+        COMMIT_STORE.write(c.getUID(), c.encode());
+        for (String p: c.getParents()) {
+            graphIndex(p);
+        }
+        if (GRAPH.indexOf(c.getUID()) < 0) {
+            GRAPH.add(c.getUID(), c.getP1(), c.getP2());
+        }
+        messages().add(c.getUID(), c.getLogMsg());
+    }
+
+    /** Returns the message index, first building it from every commit
+     * if it is missing, as it is in repositories made before it existed.
+     * @return the index
+     */
+    private MessageIndex messages() {
+        if (!MESSAGES.exists()) {
+            MESSAGES.rebuild(COMMIT_STORE.ids(),
+                id -> loadCommit(id).getLogMsg());
+        }
+        return MESSAGES;
+    }
+
+    /** Returns the position of commit UID in the commit graph, adding it
+     * and its ancestors from their objects if they are missing, as they
+     * are in repositories made before the graph existed.
+     * @param uid SHA1 for commit.
+     * @return
+     */
+    private int graphIndex(String uid) {
+        return GRAPH.ensure(uid, this::loadCommit);
+    }
+
+    /** Brings a repository made by an older version up to the current
+     * format and records the format version. Loose objects are moved
+     * into their subdirectories, commits and blobs that are serialized
+     * Java objects are rewritten in their current stored forms, a commit
+     * graph in an older layout is dropped, and every commit is added to
+     * the commit graph, which global-log walks.
+     */
+    private void upgrade() {
+        COMMIT_STORE.fanOut();
+        BLOB_STORE.fanOut();
+        TREE_STORE.fanOut();
+        COMMIT_STORE.upgrade(data -> Commit.decode(data).encode());
+        BLOB_STORE.upgrade(Blob::upgrade);
+        GRAPH.upgrade();
+        for (String id: COMMIT_STORE.ids()) {
+            graphIndex(id);
+        }
+        Utils.writeContents(VERSION, FORMAT);
+    }
+
+    /** Moves all loose blobs and commits into pack files. */
+    void repack() {
+        try (LockFile lock = LockFile.acquire(PACKS)) {
+            lock.ensureHeld();
+            BLOB_STORE.repack();
+            TREE_STORE.repack();
+            COMMIT_STORE.repack();
+        }
+    }
+
+    /** Deletes the objects that cannot be reached from a branch head or
+     * the staging area and were last written more than GRACE
+     * milliseconds ago. Commits are marked by walking their parents,
+     * through the commit graph where it has them; then the trees of the
+     * commits marked, the blobs in them and the blobs those are deltas
+     * against are marked in parallel. Objects written within the grace
+     * period are marked too, with all they refer to, since a command
+     * running alongside may be about to refer to them, and an object
+     * stored again counts as just written. The commits to be swept are
+     * dropped from the commit graph and the message index before any
+     * object is deleted. Prints how many objects were deleted if the
+     * gitlet.verbose property is set.
+     * @param grace milliseconds an unreachable object is kept for
+     */
+    void gc(long grace) {
+        try (LockFile lock = LockFile.acquire(PACKS)) {
+            long cutoff = System.currentTimeMillis() - grace;
+            ArrayList<String> commits = new ArrayList<>(markCommits(cutoff));
+            List<String> recentTrees = TREE_STORE.recent(cutoff);
+            Set<String> trees = ConcurrentHashMap.newKeySet();
+            Set<String> blobs = ConcurrentHashMap.newKeySet();
+            blobs.addAll(addMap.values());
+            blobs.addAll(BLOB_STORE.recent(cutoff));
+            int n = commits.size();
+            WorkTree.forEach(n + recentTrees.size(), k -> {
+                String root = k < n ? loadCommit(commits.get(k)).getTree()
+                    : recentTrees.get(k - n);
+                markTree(root, trees, blobs);
+            });
+            ArrayList<String> stored = new ArrayList<>(blobs);
+            WorkTree.forEach(stored.size(), k -> {
+                String b = Blob.deltaBase(stored.get(k));
+                while (b != null && blobs.add(b)) {
+                    b = Blob.deltaBase(b);
+                }
+            });
+            List<String> oldCommits = COMMIT_STORE.garbage(
+                new HashSet<>(commits), cutoff);
+            List<String> oldTrees = TREE_STORE.garbage(trees, cutoff);
+            List<String> oldBlobs = BLOB_STORE.garbage(blobs, cutoff);
+            lock.ensureHeld();
+            if (!oldCommits.isEmpty()) {
+                GRAPH.remove(new HashSet<>(oldCommits));
+                messages().remove(new HashSet<>(oldCommits));
+            }
+            List<String> kept = COMMIT_STORE.delete(oldCommits, cutoff);
+            for (String id : kept) {
+                graphIndex(id);
+                messages().add(id, loadCommit(id).getLogMsg());
+            }
+            int keptTrees = TREE_STORE.delete(oldTrees, cutoff).size();
+            int keptBlobs = BLOB_STORE.delete(oldBlobs, cutoff).size();
+            if (Boolean.getBoolean("gitlet.verbose")) {
+                System.err.printf("Deleted %d commits, %d trees and %d "
+                        + "blobs.%n", oldCommits.size() - kept.size(),
+                        oldTrees.size() - keptTrees,
+                        oldBlobs.size() - keptBlobs);
+            }
+        }
+    }
+
+    /** Returns the UIDs of the commits that are branch heads, or were
+     * written at or after the time CUTOFF, and all their ancestors.
+     * @param cutoff time in milliseconds
+     * @return the commits marked
+     */
+    private Set<String> markCommits(long cutoff) {
+        HashSet<String> marked = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>(branchHeads.values());
+        queue.addAll(COMMIT_STORE.recent(cutoff));
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            if (!marked.add(id)) {
+                continue;
+            }
+            int k = GRAPH.indexOf(id);
+            if (k < 0) {
+                queue.addAll(loadCommit(id).getParents());
+                continue;
+            }
+            for (int p : new int[] { GRAPH.parent1(k), GRAPH.parent2(k) }) {
+                if (p >= 0) {
+                    queue.add(GRAPH.id(p));
+                }
+            }
+        }
+        return marked;
+    }
+
+    /** Adds the tree ROOT and the trees under it to TREES, and the blobs
+     * in them to BLOBS. A tree already in TREES is not read again.
+     * @param root UID of the tree
+     * @param trees trees marked
+     * @param blobs blobs marked
+     */
+    private static void markTree(String root, Set<String> trees,
+                                 Set<String> blobs) {
+        if (!trees.add(root)) {
+            return;
+        }
+        Tree t = Tree.load(root);
+        blobs.addAll(t.blobs().values());
+        for (String sub : t.trees().values()) {
+            markTree(sub, trees, blobs);
+        }
+    }
+
+
+
+    /** Copies of the state of a repository that commands change in
+     * memory before saving it.
+     */
+    private final class Checkpoint {
+        /** The state of this repository as it is now. */
+        Checkpoint() {
+            _branch = curBranch;
+            _heads = new HashMap<>(branchHeads);
+            _expected = new HashMap<>(Repository.this._expected);
+            _add = new HashMap<>(addMap);
+            _remove = new HashSet<>(toRemove);
+            _unsaved = Repository.this._unsaved;
+            _locked = _stageLock != null;
+        }
+
+        /** The current branch. */
+        private final String _branch;
+        /** The branch heads. */
+        private final HashMap<String, String> _heads;
+        /** The branch heads changed and not yet saved. */
+        private final HashMap<String, String> _expected;
+        /** The files staged for addition. */
+        private final HashMap<String, String> _add;
+        /** The files staged for removal. */
+        private final HashSet<String> _remove;
+        /** Whether the state had changed while saves were held back. */
+        private final boolean _unsaved;
+        /** Whether the lock on the staging area was held. */
+        private final boolean _locked;
+    }
 
     /** Name of current branch. */
     private String curBranch;
@@ -730,6 +1506,17 @@ public class Repository {
     private HashMap<String, String> addMap = new HashMap<>();
     /** Set of files to be removed. */
     private HashSet<String> toRemove = new HashSet<>();
+    /** The branch heads this process has changed and not yet saved,
+     * each with the head it had before, or null if it is new. */
+    private final HashMap<String, String> _expected = new HashMap<>();
+    /** The lock on the staging area, or null if it is not held. */
+    private LockFile _stageLock;
+    /** True while saves are held back by defer. */
+    private boolean _deferred;
+    /** True if the state changed while saves were held back. */
+    private boolean _unsaved;
+    /** The state at the last call of checkpoint. */
+    private Checkpoint _checkpoint;
     /**
 
 
@@ -748,8 +1535,54 @@ public class Repository {
     static final File COMMITS = new File(".gitlet//commits");
     /** Holds all blobs. */
     static final File BLOBS = new File(".gitlet//blobs");
+    /** Holds packed commits. */
+    static final File COMMIT_PACKS = new File(".gitlet//packs//commits");
+    /** Holds packed blobs. */
+    static final File BLOB_PACKS = new File(".gitlet//packs//blobs");
+    /** Store of all commits, loose and packed. */
+    static final ObjectStore COMMIT_STORE =
+        new ObjectStore(COMMITS, COMMIT_PACKS);
+    /** Store of all blobs, loose and packed. */
+    static final ObjectStore BLOB_STORE = new ObjectStore(BLOBS, BLOB_PACKS);
+    /** Decoded commits by UID, up to 32 MiB of them. */
+    static final LruCache<Commit> COMMIT_CACHE =
+        new LruCache<>(1 << 25, Commit::weight);
+    /** Holds the commit graph. */
+    static final File GRAPH_FILE = new File(".gitlet//commit-graph");
+    /** The shape of the commit history. */
+    static final CommitGraph GRAPH = new CommitGraph(GRAPH_FILE);
+    /** Holds the message index. */
+    static final File MESSAGES_FILE = new File(".gitlet//messages");
+    /** Commit UIDs by message. */
+    static final MessageIndex MESSAGES = new MessageIndex(MESSAGES_FILE);
+    /** Holds trees. */
+    static final File TREES = new File(".gitlet//trees");
+    /** Holds packed trees. */
+    static final File TREE_PACKS = new File(".gitlet//packs//trees");
+    /** Store of all trees, loose and packed. */
+    static final ObjectStore TREE_STORE = new ObjectStore(TREES, TREE_PACKS);
+    /** Holds the stat index of the working tree. */
+    static final File INDEX_FILE = new File(".gitlet//index");
+    /** Blob UIDs of working-tree files, by their stat data. */
+    static final StatIndex INDEX = new StatIndex(INDEX_FILE);
     /** Holds the branches. */
     static final File BRANCHES = new File(".gitlet//branches.txt");
     /** Keeps track of current head. */
     static final File HEAD = new File(".gitlet//head.txt");
+    /** Holds the last update of the branch and staging files. */
+    static final File JOURNAL_FILE = new File(".gitlet//journal");
+    /** Makes updates of the branch and staging files atomic. */
+    static final Journal JOURNAL = new Journal(JOURNAL_FILE);
+    /** Locked while repack or gc rewrites the packs. */
+    static final File PACKS = new File(".gitlet//packs");
+    /** Records the format version of the stored objects. */
+    static final File VERSION = new File(".gitlet//version.txt");
+    /** The current format version of the stored objects. */
+    static final String FORMAT = "4";
+    /** Size of the buffer log output is collected in. */
+    private static final int LOG_BUFFER = 1 << 16;
+    /** Largest version of a file diff compares line by line. */
+    private static final long DIFF_MAX = 1 << 24;
+    /** Most bytes of files diff reads and diffs at once. */
+    private static final long DIFF_BYTES = 1 << 26;
 }
@@ -0,0 +1,217 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** A persistent cache of the blob UIDs of working-tree files, keyed by
+ *  path and checked against each file's size, modification time and
+ *  inode, so that a file whose stat data has not changed since it was
+ *  last hashed need not be read again. An entry whose modification time
+ *  is not older than the index file itself may have been changed within
+ *  the same clock tick as it was recorded, and is always rehashed. The
+ *  file holds MAGIC, a count and then one record per path in path
+ *  order. Files may be looked up from several threads at once; the
+ *  hashing itself is done outside the lock.
+ *  @author shivang singh
+ */
+class StatIndex {
+
+    /** The index stored in FILE, read on first use. */
+    StatIndex(File file) {
+        _file = file;
+    }
+
+    /** Returns the blob UID of the contents of working-tree file FILE,
+     *  which must exist, hashing it only if its stat data differ from
+     *  those recorded. */
+    String uid(File file) {
+        long[] stat = stat(file);
+        synchronized (this) {
+            load();
+            Entry e = _entries.get(file.getPath());
+            if (e != null && e.matches(stat) && stat[1] < _written) {
+                return e.uid;
+            }
+        }
+        String uid = new Blob(file).getUID();
+        synchronized (this) {
+            _entries.put(file.getPath(), new Entry(stat, uid));
+            _dirty = true;
+        }
+        return uid;
+    }
+
+    /** Records that working-tree file FILE now holds the blob UID. */
+    synchronized void record(File file, String uid) {
+        load();
+        put(file.getPath(), stat(file), uid);
+    }
+
+    /** Forgets any entry for the file at PATH. */
+    synchronized void remove(String path) {
+        load();
+        if (_entries.remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Forgets what has been read, so that the file is read again. */
+    synchronized void invalidate() {
+        _entries = null;
+        _dirty = false;
+    }
+
+    /** Writes the index back to its file, if it has changed. */
+    synchronized void save() {
+        if (!_dirty) {
+            return;
+        }
+        File tmp;
+        try {
+            tmp = File.createTempFile(_file.getName(), null,
+                    _file.getAbsoluteFile().getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(
+                        tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().size);
+                out.writeLong(e.getValue().mtime);
+                out.writeLong(e.getValue().inode);
+                out.write(Utils.fromHex(e.getValue().uid));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            _written = nanos(Files.getLastModifiedTime(_file.toPath()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _dirty = false;
+    }
+
+    /** Records the file at PATH with stat data STAT as holding UID. */
+    private void put(String path, long[] stat, String uid) {
+        Entry old = _entries.get(path);
+        if (old == null || !old.matches(stat) || !old.uid.equals(uid)) {
+            _entries.put(path, new Entry(stat, uid));
+            _dirty = true;
+        }
+    }
+
+    /** Reads the index file if that has not been done. A missing or
+     *  unreadable index is treated as empty. */
+    private void load() {
+        if (_entries != null) {
+            return;
+        }
+        _entries = new TreeMap<>();
+        if (!_file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(
+                        _file.toPath())))) {
+            _written = nanos(Files.getLastModifiedTime(_file.toPath()));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("bad index");
+            }
+            byte[] raw = new byte[Utils.UID_LENGTH / 2];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                long[] stat = { in.readLong(), in.readLong(), in.readLong() };
+                in.readFully(raw);
+                _entries.put(path, new Entry(stat, Utils.toHex(raw)));
+            }
+        } catch (IOException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** Returns the size, modification time in nanoseconds and inode
+     *  number (0 where the file system has none) of FILE. */
+    private static long[] stat(File file) {
+        Path path = file.toPath();
+        try {
+            if (UNIX) {
+                Map<String, Object> attrs = Files.readAttributes(path,
+                        "unix:size,lastModifiedTime,ino");
+                return new long[] { (Long) attrs.get("size"),
+                    nanos((FileTime) attrs.get("lastModifiedTime")),
+                    (Long) attrs.get("ino") };
+            }
+            return new long[] { Files.size(path),
+                nanos(Files.getLastModifiedTime(path)), 0 };
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns TIME in nanoseconds. */
+    private static long nanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    /** What is recorded for one path. */
+    private static class Entry {
+        /** An entry for a file with stat data STAT holding blob UID. */
+        Entry(long[] stat, String uid) {
+            this.size = stat[0];
+            this.mtime = stat[1];
+            this.inode = stat[2];
+            this.uid = uid;
+        }
+
+        /** Returns true iff STAT are the stat data recorded here. */
+        boolean matches(long[] stat) {
+            return size == stat[0] && mtime == stat[1] && inode == stat[2];
+        }
+
+        /** Size in bytes. */
+        private final long size;
+        /** Modification time in nanoseconds. */
+        private final long mtime;
+        /** Inode number. */
+        private final long inode;
+        /** UID of the blob the file held. */
+        private final String uid;
+    }
+
+    /** Leading word of the index file. */
+    private static final int MAGIC = 0x47494458;
+    /** True iff the file system reports inode numbers. */
+    private static final boolean UNIX =
+        FileSystems.getDefault().supportedFileAttributeViews()
+        .contains("unix");
+
+    /** The index file. */
+    private final File _file;
+    /** Entries by path, or null before the file is read. */
+    private TreeMap<String, Entry> _entries;
+    /** Modification time of the index file when last read or written,
+     *  in nanoseconds. */
+    private long _written;
+    /** True iff the entries differ from the file. */
+    private boolean _dirty;
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A directory in a snapshot: the blob UIDs of the files in it and the
+ *  tree UIDs of the directories in it, by name. Trees never change once
+ *  stored and are named by the SHA-1 of their stored form, so a
+ *  directory that is the same in two commits is the same object, and a
+ *  commit that changes one file writes new trees only along that file's
+ *  path. Paths in a flattened tree are names separated by SEPARATOR.
+ *  @author shivang singh
+ */
+class Tree {
+
+    /** An empty tree. */
+    Tree() {
+    }
+
+    /** Returns the tree stored under UID.
+     * @param uid SHA1 of the tree.
+     * @return
+     */
+    static Tree load(String uid) {
+        Tree t = CACHE.get(uid);
+        if (t == null) {
+            byte[] data = Repository.TREE_STORE.read(uid);
+            if (data == null) {
+                throw new IllegalArgumentException("missing tree " + uid);
+            }
+            t = decode(data);
+            CACHE.put(uid, t);
+        }
+        return t;
+    }
+
+    /** Stores this tree and returns its UID.
+     * @return
+     */
+    String save() {
+        byte[] data = encode();
+        String uid = Utils.sha1(data);
+        Repository.TREE_STORE.write(uid, data);
+        CACHE.put(uid, this);
+        return uid;
+    }
+
+    /** Stores the trees for the files FILES, a map from path to blob UID,
+     * and returns the UID of the root.
+     * @param files paths and blobs
+     * @return
+     */
+    static String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Returns the UID of the tree that is ROOT, which may be null for an
+     * empty tree, with the changes CHANGES applied: each maps a path to
+     * its new blob UID, or to null if the file is removed. Only the
+     * trees along changed paths are rewritten; directories left empty
+     * are dropped.
+     * @param root UID of the original tree
+     * @param changes paths and blobs
+     * @return
+     */
+    static String update(String root, Map<String, String> changes) {
+        TreeMap<String, TreeMap<String, String>> byDir = new TreeMap<>();
+        TreeMap<String, String> here = new TreeMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash < 0) {
+                here.put(path, e.getValue());
+            } else {
+                byDir.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        Tree old = root == null ? new Tree() : load(root);
+        if (here.isEmpty() && byDir.isEmpty() && root != null) {
+            return root;
+        }
+        Tree result = new Tree();
+        result._blobs.putAll(old._blobs);
+        result._trees.putAll(old._trees);
+        for (Map.Entry<String, String> e : here.entrySet()) {
+            result._trees.remove(e.getKey());
+            if (e.getValue() == null) {
+                result._blobs.remove(e.getKey());
+            } else {
+                result._blobs.put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> e
+                 : byDir.entrySet()) {
+            String name = e.getKey();
+            String sub = update(result._trees.get(name), e.getValue());
+            if (load(sub).isEmpty()) {
+                result._trees.remove(name);
+            } else {
+                result._blobs.remove(name);
+                result._trees.put(name, sub);
+            }
+        }
+        return result.save();
+    }
+
+    /** Adds every file under the tree ROOT to INTO, by path with PREFIX
+     * in front.
+     * @param root UID of the tree
+     * @param prefix path of the tree, ending in SEPARATOR, or ""
+     * @param into where the paths and blob UIDs go
+     */
+    static void flatten(String root, String prefix, Map<String, String> into) {
+        Tree t = load(root);
+        for (Map.Entry<String, String> e : t._blobs.entrySet()) {
+            into.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : t._trees.entrySet()) {
+            flatten(e.getValue(), prefix + e.getKey() + SEPARATOR, into);
+        }
+    }
+
+    /** Adds to INTO every path under the trees FROM and TO, either of
+     * which may be null for none, whose blob differs between them, mapped
+     * to its blob UID in TO, or to null if TO does not have it. Subtrees
+     * with the same UID on both sides are skipped without being read.
+     * @param from UID of the original tree
+     * @param to UID of the new tree
+     * @param prefix path of the trees, ending in SEPARATOR, or ""
+     * @param into where the paths and blob UIDs go
+     */
+    static void diff(String from, String to, String prefix,
+                     Map<String, String> into) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree a = from == null ? new Tree() : load(from);
+        Tree b = to == null ? new Tree() : load(to);
+        TreeMap<String, String> blobs = new TreeMap<>(b._blobs);
+        for (String name : a._blobs.keySet()) {
+            blobs.putIfAbsent(name, null);
+        }
+        for (Map.Entry<String, String> e : blobs.entrySet()) {
+            if (e.getValue() == null
+                    || !e.getValue().equals(a._blobs.get(e.getKey()))) {
+                into.put(prefix + e.getKey(), e.getValue());
+            }
+        }
+        TreeMap<String, String> trees = new TreeMap<>(b._trees);
+        for (String name : a._trees.keySet()) {
+            trees.putIfAbsent(name, null);
+        }
+        for (Map.Entry<String, String> e : trees.entrySet()) {
+            diff(a._trees.get(e.getKey()), e.getValue(),
+                 prefix + e.getKey() + SEPARATOR, into);
+        }
+    }
+
+    /** Returns true iff this tree holds nothing.
+     * @return
+     */
+    boolean isEmpty() {
+        return _blobs.isEmpty() && _trees.isEmpty();
+    }
+
+    /** Returns the blob UIDs of the files here, by name.
+     * @return
+     */
+    Map<String, String> blobs() {
+        return Collections.unmodifiableMap(_blobs);
+    }
+
+    /** Returns the tree UIDs of the directories here, by name.
+     * @return
+     */
+    Map<String, String> trees() {
+        return Collections.unmodifiableMap(_trees);
+    }
+
+    /** Returns this tree in its stored form: MAGIC, the number of
+     * entries, and then for each entry in name order a byte that is BLOB
+     * or TREE, its name and its UID as 20 bytes. Names are an int length
+     * and UTF-8 bytes.
+     * @return
+     */
+    private byte[] encode() {
+        TreeMap<String, Integer> kinds = new TreeMap<>();
+        for (String name : _blobs.keySet()) {
+            kinds.put(name, BLOB);
+        }
+        for (String name : _trees.keySet()) {
+            kinds.put(name, TREE);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeInt(kinds.size());
+            for (Map.Entry<String, Integer> e : kinds.entrySet()) {
+                String name = e.getKey();
+                byte[] raw = name.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(e.getValue());
+                out.writeInt(raw.length);
+                out.write(raw);
+                out.write(Utils.fromHex(e.getValue() == BLOB
+                        ? _blobs.get(name) : _trees.get(name)));
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+    }
+
+    /** Returns the tree whose stored form is DATA.
+     * @param data stored bytes
+     * @return
+     */
+    private static Tree decode(byte[] data) {
+        if (data.length < MAGIC.length
+                || !Arrays.equals(data, 0, MAGIC.length, MAGIC, 0,
+                        MAGIC.length)) {
+            throw new IllegalArgumentException("corrupt tree");
+        }
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(data));
+            in.skipNBytes(MAGIC.length);
+            Tree t = new Tree();
+            byte[] uid = new byte[Utils.UID_LENGTH / 2];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                int kind = in.readByte();
+                byte[] raw = new byte[in.readInt()];
+                in.readFully(raw);
+                in.readFully(uid);
+                String name = new String(raw, StandardCharsets.UTF_8);
+                (kind == TREE ? t._trees : t._blobs)
+                    .put(name, Utils.toHex(uid));
+            }
+            return t;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("corrupt tree");
+        }
+    }
+
+    /** Returns roughly how many bytes of memory this tree uses.
+     * @return
+     */
+    private long weight() {
+        return BASE_WEIGHT + ENTRY_WEIGHT * (_blobs.size() + _trees.size());
+    }
+
+    /** Separates the names in a path. */
+    static final String SEPARATOR = "/";
+
+    /** Prefix of a stored tree. */
+    static final byte[] MAGIC = {'t', 'r', 'e', 'e'};
+
+    /** Kind of an entry that is a file. */
+    private static final int BLOB = 0;
+
+    /** Kind of an entry that is a directory. */
+    private static final int TREE = 1;
+
+    /** Approximate bytes used by a tree apart from its entries. */
+    private static final long BASE_WEIGHT = 200;
+
+    /** Approximate bytes used by one entry. */
+    private static final long ENTRY_WEIGHT = 200;
+
+    /** Decoded trees by UID, up to 16 MiB of them. */
+    private static final LruCache<Tree> CACHE =
+        new LruCache<>(1 << 24, Tree::weight);
+
+    /** Files here: name to blob UID. */
+    private final TreeMap<String, String> _blobs = new TreeMap<>();
+    /** Directories here: name to tree UID. */
+    private final TreeMap<String, String> _trees = new TreeMap<>();
+}
@@ -1,5 +1,22 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
 import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -20,6 +37,367 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** The cache evicts least recently used values to stay within its
+     *  capacity and counts hits and misses. */
+    @Test
+    public void lruCacheTest() {
+        LruCache<String> cache = new LruCache<>(10, v -> v.length());
+        cache.put("a", "xxxx");
+        cache.put("b", "xxxx");
+        assertEquals("xxxx", cache.get("a"));
+        cache.put("c", "xxxx");
+        assertNull(cache.get("b"));
+        assertEquals("xxxx", cache.get("a"));
+        assertEquals(8, cache.weight());
+        cache.put("d", "xxxxxxxxxxx");
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    /** In a criss-cross history both crossing commits are best common
+     *  ancestors, and older common ancestors are not reported. */
+    @Test
+    public void mergeBasesTest() throws IOException {
+        File file = File.createTempFile("graph", "");
+        file.delete();
+        CommitGraph graph = new CommitGraph(file);
+        String[] ids = new String[7];
+        for (int k = 0; k < ids.length; k += 1) {
+            ids[k] = Utils.sha1("commit " + k);
+        }
+        graph.add(ids[0], null, null);
+        graph.add(ids[1], ids[0], null);
+        graph.add(ids[2], ids[1], null);
+        graph.add(ids[3], ids[1], null);
+        graph.add(ids[4], ids[2], ids[3]);
+        graph.add(ids[5], ids[3], ids[2]);
+        graph.add(ids[6], ids[4], null);
+        int[] bases = graph.mergeBases(6, 5);
+        Arrays.sort(bases);
+        assertArrayEquals(new int[] { 2, 3 }, bases);
+        assertArrayEquals(new int[] { 3 }, graph.mergeBases(3, 6));
+        assertArrayEquals(new int[] { 1 }, graph.mergeBases(2, 3));
+        assertEquals(2, graph.nearest(6, bases));
+        assertEquals(3, graph.nearest(5, bases));
+        assertTrue(graph.isAncestor(0, 5));
+        assertFalse(graph.isAncestor(4, 5));
+        file.delete();
+    }
+
+    /** Commits swept by gc leave the commit graph, which closes up the
+     *  positions of the rest, and the message index. A graph read before
+     *  the rewrite reads it again before appending, even when the file
+     *  has since grown back to the length it read. */
+    @Test
+    public void removeCommitsTest() throws IOException {
+        File file = File.createTempFile("graph", "");
+        file.delete();
+        CommitGraph graph = new CommitGraph(file);
+        String[] ids = new String[4];
+        for (int k = 0; k < ids.length; k += 1) {
+            ids[k] = Utils.sha1("commit " + k);
+        }
+        graph.add(ids[0], null, null);
+        graph.add(ids[1], ids[0], null);
+        graph.add(ids[2], ids[0], null);
+        graph.add(ids[3], ids[1], null);
+        CommitGraph stale = new CommitGraph(file);
+        assertEquals(4, stale.size());
+        graph.remove(Set.of(ids[2]));
+        graph = new CommitGraph(file);
+        assertEquals(3, graph.size());
+        assertEquals(-1, graph.indexOf(ids[2]));
+        assertEquals(2, graph.indexOf(ids[3]));
+        assertEquals(1, graph.parent1(2));
+        assertEquals(3, graph.generation(2));
+        try {
+            graph.remove(Set.of(ids[1]));
+            fail("removed the parent of a commit kept");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(3, graph.size());
+        }
+        String later = Utils.sha1("commit 4");
+        graph.add(later, ids[3], null);
+        assertEquals(4, stale.add(Utils.sha1("commit 5"), later, null));
+        assertEquals(3, stale.parent1(4));
+        assertEquals(5, stale.generation(4));
+        file.delete();
+        file = File.createTempFile("messages", null);
+        file.delete();
+        MessageIndex index = new MessageIndex(file);
+        index.add(ids[0], "fix log");
+        index.add(ids[1], "fix log");
+        index.add(ids[2], "fix status");
+        index.remove(Set.of(ids[0], ids[2]));
+        index = new MessageIndex(file);
+        assertEquals(Arrays.asList(ids[1]), index.prefix("fix"));
+        file.delete();
+    }
+
+    /** An untracked file is in the way of a file written at its path,
+     *  under it or over the directory it is in. */
+    @Test
+    public void inTheWayTest() {
+        List<String> paths = List.of("a", "d/e/f");
+        assertEquals("a", WorkTree.inTheWay(List.of("b", "a"), paths));
+        assertEquals("d", WorkTree.inTheWay(List.of("d"), paths));
+        assertEquals("d/e", WorkTree.inTheWay(List.of("d/e"), paths));
+        assertEquals("a/x", WorkTree.inTheWay(List.of("a/x"), paths));
+        assertNull(WorkTree.inTheWay(List.of("d/g", "ab", "d/e/f2"),
+                                     paths));
+    }
+
+    /** Batch lines are split on white space, except inside quotes. */
+    @Test
+    public void splitTest() {
+        assertArrayEquals(new String[] {"add", "a.txt"},
+                          Main.split("  add\ta.txt "));
+        assertArrayEquals(new String[] {"commit", "fix \"log\" now"},
+                          Main.split("commit \"fix \\\"log\\\" now\""));
+        assertArrayEquals(new String[] {"find", ""},
+                          Main.split("find \"\""));
+        assertEquals(0, Main.split("   ").length);
+    }
+
+    /** A file name is tracked by its path from the repository root, and
+     *  one outside the repository is refused. */
+    @Test
+    public void repoPathTest() {
+        assertEquals("f", Repository.repoPath("./f"));
+        assertEquals("a/f", Repository.repoPath("a//f"));
+        assertEquals("a/f", Repository.repoPath("b/../a/./f"));
+        assertEquals("a/f", Repository.repoPath(
+                new File("a/f").getAbsolutePath()));
+        for (String name : List.of("..", "../f", "a/../..", ".")) {
+            try {
+                Repository.repoPath(name);
+                fail(name + " is not in the repository");
+            } catch (GitletException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    /** The message index finds whole messages, their starts and text
+     *  inside them, and is read back from its file. */
+    @Test
+    public void messageIndexTest() throws IOException {
+        File file = File.createTempFile("messages", null);
+        file.delete();
+        String a = "aa" + "0".repeat(38), b = "bb" + "0".repeat(38);
+        String c = "cc" + "0".repeat(38);
+        MessageIndex index = new MessageIndex(file);
+        index.add(a, "fix log output");
+        index.add(b, "fix status");
+        index.add(c, "fix log output");
+        index.add(a, "fix log output");
+        index = new MessageIndex(file);
+        assertEquals(Arrays.asList(a, c), index.exact("fix log output"));
+        assertEquals(Arrays.asList(a, b, c), index.prefix("fix "));
+        assertEquals(Arrays.asList(a, c), index.containing("x log o"));
+        assertEquals(Arrays.asList(b), index.containing("tat"));
+        assertEquals(Arrays.asList(), index.containing("fix output"));
+        assertEquals(Arrays.asList(), index.exact("fix"));
+        file.delete();
+    }
+
+    /** Lookups combine the sorted index with the records after it, the
+     *  sorted index follows removals, and it is written afresh to cover
+     *  records appended since once there are enough of them. */
+    @Test
+    public void messageSortedIndexTest() throws IOException {
+        File file = File.createTempFile("messages", null);
+        file.delete();
+        File sorted = new File(file.getPath() + ".idx");
+        String a = "aa" + "0".repeat(38), b = "bb" + "0".repeat(38);
+        String c = "cc" + "0".repeat(38);
+        Map<String, String> msgs = Map.of(a, "fix log output",
+                                          b, "fix status");
+        MessageIndex index = new MessageIndex(file);
+        index.rebuild(List.of(a, b), msgs::get);
+        assertTrue(sorted.isFile());
+        index.add(c, "fix log output");
+        index = new MessageIndex(file);
+        assertEquals(Arrays.asList(a, c), index.exact("fix log output"));
+        assertEquals(Arrays.asList(a, b, c), index.prefix("fix "));
+        assertEquals(Arrays.asList(a, c), index.containing("x log o"));
+        assertEquals(Arrays.asList(b), index.containing("tat"));
+        assertEquals(Arrays.asList(a, b, c), index.containing(""));
+        index.remove(Set.of(a));
+        index = new MessageIndex(file);
+        assertEquals(Arrays.asList(c), index.exact("fix log output"));
+        long before = sorted.lastModified();
+        sorted.setLastModified(before - 10000);
+        for (int k = 0; k < 2000; k += 1) {
+            index.add(String.format("%040x", k + 1), "message number " + k);
+        }
+        assertTrue(sorted.lastModified() > before - 10000);
+        index = new MessageIndex(file);
+        assertEquals(List.of(String.format("%040x", 1000)),
+                     index.exact("message number 999"));
+        assertEquals(11, index.prefix("message number 199").size());
+        assertEquals(2000, index.containing("number").size());
+        file.delete();
+        sorted.delete();
+    }
+
+    /** Applying the hunks of a diff of random texts to the first gives
+     *  the second, and the hunks are no longer than the texts, also when
+     *  the texts are too different for a shortest edit to be sought.
+     *  Texts with no line in common are one hunk. */
+    @Test
+    public void diffTest() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 200; trial += 1) {
+            int[] a = randomLines(random, 30, 4);
+            int[] b = randomLines(random, 30, 4);
+            assertArrayEquals(b, patch(a, b, Diff.diff(a, b)));
+        }
+        for (int trial = 0; trial < 5; trial += 1) {
+            int[] a = randomLines(random, 5000, 20);
+            int[] b = randomLines(random, 5000, 20);
+            assertArrayEquals(b, patch(a, b, Diff.diff(a, b)));
+        }
+        assertEquals(1, Diff.diff(new int[] {1, 2, 3, 4},
+                                  new int[] {1, 2, 5, 4}).size());
+        int[] a = new int[50000], b = new int[50000];
+        for (int k = 0; k < a.length; k += 1) {
+            a[k] = k;
+            b[k] = a.length + k;
+        }
+        assertEquals(1, Diff.diff(a, b).size());
+    }
+
+    /** Returns the lines A with HUNKS, which turn them into B, applied. */
+    private static int[] patch(int[] a, int[] b, List<Diff.Hunk> hunks) {
+        ArrayList<Integer> result = new ArrayList<>();
+        int pos = 0;
+        for (Diff.Hunk h : hunks) {
+            assertTrue(h.a0 >= pos && h.a1 >= h.a0 && h.b1 >= h.b0);
+            for (; pos < h.a0; pos += 1) {
+                result.add(a[pos]);
+            }
+            for (int k = h.b0; k < h.b1; k += 1) {
+                result.add(b[k]);
+            }
+            pos = h.a1;
+        }
+        for (; pos < a.length; pos += 1) {
+            result.add(a[pos]);
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Returns a random text of fewer than MAX lines drawn from VALUES
+     *  values. */
+    private static int[] randomLines(Random random, int max, int values) {
+        int[] lines = new int[random.nextInt(max)];
+        for (int k = 0; k < lines.length; k += 1) {
+            lines[k] = random.nextInt(values);
+        }
+        return lines;
+    }
 
+    /** Edits to different lines merge cleanly; edits to the same lines
+     *  conflict only there. Conflict markers always start a line, even
+     *  after a side that ends without a newline. */
+    @Test
+    public void mergeTest() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("A\nb\nc\nd\nE\n",
+                     merged(base, "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n"));
+        assertEquals("a\nb\nC\nd\ne\n",
+                     merged(base, "a\nb\nC\nd\ne\n", "a\nb\nC\nd\ne\n"));
+        assertEquals("A\nb\n<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\nd\ne\n",
+                     merged(base, "A\nb\nx\nd\ne\n", "a\nb\ny\nd\ne\n"));
+        assertEquals("<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\n",
+                     merged("z", "x", "y"));
+        assertEquals("<<<<<<< HEAD\n=======\ny\n>>>>>>>\n",
+                     merged("z", "", "y"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Merge.conflict("x".getBytes(), "y\n".getBytes(), out);
+        assertEquals("<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\n",
+                     out.toString());
+        assertEquals("a\nb\nc\nd\ne\nf\n",
+                     merged(base, base, base + "f\n"));
+    }
 
+    /** Unified diffs give each change with its context, and show added
+     *  and removed files against /dev/null. */
+    @Test
+    public void unifiedDiffTest() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Diff.unified("f", "a\nb\nc\nd\ne\nf\ng\nh\ni\n".getBytes(),
+                     "a\nb\nc\nd\ne\nf\ng\nh\nI".getBytes(), out);
+        assertEquals("diff --git a/f b/f\n--- a/f\n+++ b/f\n"
+                     + "@@ -6,4 +6,4 @@\n f\n g\n h\n-i\n+I\n"
+                     + "\\ No newline at end of file\n", out.toString());
+        out.reset();
+        Diff.unified("g", null, "x\n".getBytes(), out);
+        assertEquals("diff --git a/g b/g\nnew file\n--- /dev/null\n"
+                     + "+++ b/g\n@@ -0,0 +1 @@\n+x\n", out.toString());
+    }
+
+    /** The merge plan takes each side's change, keeps changes made the
+     *  same way on both sides, and merges or conflicts on the rest. */
+    @Test
+    public void mergePlanTest() {
+        HashMap<String, String> base = new HashMap<>(Map.of(
+            "same", "1", "ours", "1", "theirs", "1", "both", "1",
+            "gone", "1", "edited", "1", "dropped", "1"));
+        HashMap<String, String> ours = new HashMap<>(Map.of(
+            "same", "1", "ours", "2", "theirs", "1", "both", "2",
+            "edited", "2", "dropped", "1", "added", "3", "new", "4"));
+        HashMap<String, String> theirs = new HashMap<>(Map.of(
+            "same", "1", "ours", "1", "theirs", "2", "both", "3",
+            "gone", "1", "added", "3", "new", "5", "fresh", "6"));
+        TreeMap<String, Merge.Action> plan =
+            Merge.plan(base, ours, theirs);
+        assertEquals(Map.of("theirs", Merge.Action.TAKE_THEIRS,
+                            "fresh", Merge.Action.TAKE_THEIRS,
+                            "both", Merge.Action.MERGE,
+                            "new", Merge.Action.MERGE,
+                            "edited", Merge.Action.CONFLICT,
+                            "dropped", Merge.Action.DELETE), plan);
+    }
+
+    /** An object serialized by an older version is found and converted
+     *  by upgrade even when it was stored compressed, whether it is
+     *  loose or in a pack. */
+    @Test
+    public void upgradeCompressedTest() throws IOException {
+        File dir = Files.createTempDirectory("store").toFile();
+        ObjectStore store = new ObjectStore(new File(dir, "loose"),
+            new File(dir, "packs"), Codec.DEFLATE);
+        new File(dir, "loose").mkdir();
+        byte[] old = Utils.serialize(String.join("", Collections.nCopies(
+            100, "an object serialized by an older version ")));
+        String packed = Utils.sha1("packed"), loose = Utils.sha1("loose");
+        store.write(packed, old);
+        store.repack();
+        store.write(loose, old);
+        store.write(Utils.sha1("current"), "current".getBytes());
+        assertFalse(Arrays.equals(old, Files.readAllBytes(
+            new File(dir, "loose/" + loose.substring(0, 2) + "/"
+                     + loose.substring(2)).toPath())));
+        assertEquals(2, store.upgrade(data -> "converted".getBytes()));
+        assertEquals("converted", new String(store.read(packed)));
+        assertEquals("converted", new String(store.read(loose)));
+        assertEquals(0, store.upgrade(data -> "again".getBytes()));
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                .forEach(f -> f.toFile().delete());
+        }
+    }
+
+    /** Returns the merge of OURS and THEIRS made from BASE. */
+    private static String merged(String base, String ours, String theirs)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Merge.merge(base.getBytes(), ours.getBytes(), theirs.getBytes(),
+                    out);
+        return out.toString();
+    }
+
+}
@@ -1,16 +1,21 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -29,6 +34,9 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** The number of bytes read at a time when hashing a stream. */
+    static final int CHUNK_SIZE = 1 << 16;
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
@@ -43,22 +51,70 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+            return hexDigest(md);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the SHA-1 hash of the bytes remaining in IN, which are read
+     *  CHUNK_SIZE bytes at a time and also written to COPY unless it is
+     *  null.  The result is the same as sha1 of those bytes as a single
+     *  array, but memory use does not depend on their number. */
+    static String sha1(InputStream in, OutputStream copy) throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] chunk = new byte[CHUNK_SIZE];
+            for (int n = in.read(chunk); n != -1; n = in.read(chunk)) {
+                md.update(chunk, 0, n);
+                if (copy != null) {
+                    copy.write(chunk, 0, n);
+                }
             }
-            return result.toString();
+            return hexDigest(md);
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns the digest of MD as a lower-case hexadecimal numeral. */
+    private static String hexDigest(MessageDigest md) {
+        Formatter result = new Formatter();
+        for (byte b : md.digest()) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the lower-case hexadecimal numeral for RAW. */
+    static String toHex(byte[] raw) {
+        StringBuilder result = new StringBuilder(2 * raw.length);
+        for (byte b : raw) {
+            result.append(HEX_DIGITS.charAt((b >> 4) & 0xf));
+            result.append(HEX_DIGITS.charAt(b & 0xf));
+        }
+        return result.toString();
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] =
+                (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Hexadecimal digits. */
+    private static final String HEX_DIGITS = "0123456789abcdef";
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -132,6 +188,22 @@ class Utils {
         }
     }
 
+    /** Forces FILE, a file or a directory, to disk, so that its contents,
+     *  or for a directory the names in it, survive a crash. Not every
+     *  system can open a directory to do this, and a directory is
+     *  skipped where it cannot.  Throws IllegalArgumentException in case
+     *  of other problems. */
+    static void force(File file) {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -148,6 +220,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from DATA, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] data,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(data));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
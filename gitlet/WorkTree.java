@@ -0,0 +1,224 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/** Scans and updates of the working directory. Files are hashed and
+ *  written concurrently on a fork-join pool, each streamed a chunk at a
+ *  time, so memory use is bounded by the number of worker threads rather
+ *  than the size of the tree; results always come back sorted by name
+ *  whatever order the work finished in.
+ *  @author shivang singh
+ */
+class WorkTree {
+
+    /** Returns the paths of the files in the working directory and the
+     *  directories under it, other than the .gitlet directory, in sorted
+     *  order. Names in a path are separated by Tree.SEPARATOR. */
+    static List<String> files() {
+        ArrayList<String> result = new ArrayList<>();
+        list(new File(System.getProperty("user.dir")), "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Deletes the working-tree file at PATH, if it exists, and then any
+     *  directories above it that are left empty. */
+    static void delete(String path) {
+        if (!path.contains(Tree.SEPARATOR)) {
+            Utils.restrictedDelete(path);
+            return;
+        }
+        File file = new File(path);
+        if (!file.isDirectory()) {
+            file.delete();
+        }
+        for (File dir = file.getParentFile(); dir != null;
+             dir = dir.getParentFile()) {
+            String[] left = dir.list();
+            if (left == null || left.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
+    }
+
+    /** Creates the directories that the working-tree file at PATH needs
+     *  to be written. Nothing in their way is deleted: callers check for
+     *  that first with inTheWay or blocked. */
+    static void prepare(String path) {
+        File dir = new File(path).getParentFile();
+        if (dir == null || dir.isDirectory()) {
+            return;
+        }
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IllegalArgumentException("cannot create directory "
+                                               + dir);
+        }
+    }
+
+    /** Returns the first of the working-tree files UNTRACKED that writing
+     *  the files PATHS would destroy: one at a path in PATHS, one where a
+     *  directory that one of PATHS needs must go, or one inside a
+     *  directory where one of PATHS must go. Returns null if there is
+     *  none. */
+    static String inTheWay(Collection<String> untracked,
+                           Collection<String> paths) {
+        HashSet<String> files = new HashSet<>(paths);
+        HashSet<String> dirs = new HashSet<>();
+        for (String path : paths) {
+            for (int i = path.indexOf(Tree.SEPARATOR); i >= 0;
+                 i = path.indexOf(Tree.SEPARATOR, i + 1)) {
+                dirs.add(path.substring(0, i));
+            }
+        }
+        for (String u : untracked) {
+            if (files.contains(u) || dirs.contains(u)) {
+                return u;
+            }
+            for (int i = u.indexOf(Tree.SEPARATOR); i >= 0;
+                 i = u.indexOf(Tree.SEPARATOR, i + 1)) {
+                if (files.contains(u.substring(0, i))) {
+                    return u;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Returns the working-tree path that keeps the file PATH from being
+     *  written: a plain file where one of its directories must go, or a
+     *  directory where it must go. Returns null if there is none. */
+    static String blocked(String path) {
+        if (new File(path).isDirectory()) {
+            return path;
+        }
+        for (File d = new File(path).getParentFile(); d != null;
+             d = d.getParentFile()) {
+            if (d.isFile()) {
+                return d.getPath();
+            }
+        }
+        return null;
+    }
+
+    /** Adds the path of every file under DIR to INTO, with PREFIX in
+     *  front. */
+    private static void list(File dir, String prefix, List<String> into) {
+        File[] all = dir.listFiles();
+        if (all == null) {
+            return;
+        }
+        for (File x : all) {
+            String name = x.getName();
+            if (prefix.isEmpty() && name.equals(Repository.GITLET.getName())) {
+                continue;
+            }
+            if (x.isDirectory()) {
+                list(x, prefix + name + Tree.SEPARATOR, into);
+            } else {
+                into.add(prefix + name);
+            }
+        }
+    }
+
+    /** Returns the blob UIDs of the working-tree files NAMES, by name,
+     *  looking each up in INDEX and hashing those that INDEX cannot vouch
+     *  for in parallel. */
+    static TreeMap<String, String> hash(Collection<String> names,
+                                        StatIndex index) {
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted);
+        String[] uids = new String[sorted.length];
+        forEach(sorted.length,
+            k -> uids[k] = index.uid(new File(sorted[k])));
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int k = 0; k < sorted.length; k += 1) {
+            result.put(sorted[k], uids[k]);
+        }
+        return result;
+    }
+
+    /** Makes the working tree match CHANGES, a map from path to the blob
+     *  UID it should hold, or to null if it should not exist, and keeps
+     *  INDEX up to date. Deletions are done first, and then the files are
+     *  written in parallel. Returns the number of bytes written. */
+    static long apply(Map<String, String> changes, StatIndex index) {
+        ArrayList<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            if (e.getValue() == null) {
+                delete(e.getKey());
+                index.remove(e.getKey());
+            } else {
+                writes.add(e.getKey());
+            }
+        }
+        LongAdder bytes = new LongAdder();
+        forEach(writes.size(), k -> {
+            String path = writes.get(k);
+            String uid = changes.get(path);
+            File file = new File(path);
+            prepare(path);
+            new Blob(uid).writeTo(file);
+            index.record(file, uid);
+            bytes.add(file.length());
+        });
+        return bytes.sum();
+    }
+
+    /** Calls BODY on each of 0 .. N-1, in parallel. */
+    static void forEach(int n, IntConsumer body) {
+        POOL.invoke(new RangeTask(0, n, body));
+    }
+
+    /** Runs a body over a range of positions, splitting the range in half
+     *  until it is small enough to do directly. */
+    private static class RangeTask extends RecursiveAction {
+
+        /** A task calling BODY on each of FROM .. TO-1. */
+        RangeTask(int from, int to, IntConsumer body) {
+            _from = from;
+            _to = to;
+            _body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= LEAF_FILES) {
+                for (int k = _from; k < _to; k += 1) {
+                    _body.accept(k);
+                }
+            } else {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new RangeTask(_from, mid, _body),
+                          new RangeTask(mid, _to, _body));
+            }
+        }
+
+        /** Tasks are never serialized; this only fixes the version. */
+        private static final long serialVersionUID = 1L;
+
+        /** First position in this task's range. */
+        private final int _from;
+        /** Position after this task's range. */
+        private final int _to;
+        /** What is done at each position. */
+        private final IntConsumer _body;
+    }
+
+    /** Largest number of files handled by one task without splitting. */
+    private static final int LEAF_FILES = 4;
+    /** The pool doing the work, one worker per processor. */
+    private static final ForkJoinPool POOL =
+        new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+}